@@ -0,0 +1,288 @@
+package com.iett.tracking.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end load test against a running backend, normally one started with the {@code simulator}
+ * profile. Concurrent readers hit the read endpoints in a fixed mix for a while, then the driver
+ * prints latency percentiles per endpoint and how long the background refreshes took in the
+ * meantime, taken from the backend's Prometheus metrics.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.iett.tracking.bench.LoadTestMain --url=http://localhost:8080 --readers=32 --duration=60
+ * </pre>
+ */
+public final class LoadTestMain {
+
+    private static final Pattern METRIC_LINE = Pattern.compile("^(\\w+)\\{([^}]*)}\\s+(\\S+)$");
+
+    // Search terms that hit door numbers, plates, operators and garage codes of the simulated fleet
+    private static final String[] SEARCH_TERMS = {"A-10", "B-2", "34 HO", "KZ 1", "İETT", "Özel", "G1", "G0", "halk", "999"};
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final Map<String, Supplier<String>> endpoints = new LinkedHashMap<>();
+
+    private LoadTestMain(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        endpoints.put("GET /api/buses", () -> "/api/buses?page=" + random().nextInt(50) + "&size=20");
+        endpoints.put("GET /api/buses/search", () -> "/api/buses/search?term="
+                + encode(SEARCH_TERMS[random().nextInt(SEARCH_TERMS.length)]) + "&size=20");
+        endpoints.put("GET /api/buses/near", () -> String.format(Locale.ROOT, "/api/buses/near?lat=%.5f&lon=%.5f&radiusKm=%.1f",
+                40.95 + random().nextDouble() * 0.2, 28.7 + random().nextDouble() * 0.6, 0.5 + random().nextDouble() * 2));
+        endpoints.put("GET /api/buses/within", () -> {
+            double lon = 28.6 + random().nextDouble() * 0.7;
+            double lat = 40.9 + random().nextDouble() * 0.3;
+            return String.format(Locale.ROOT, "/api/buses/within?bbox=%.5f,%.5f,%.5f,%.5f&limit=500", lon, lat, lon + 0.05, lat + 0.04);
+        });
+        endpoints.put("GET /api/garages", () -> "/api/garages?page=" + random().nextInt(2) + "&size=20");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int readers = Integer.parseInt(options.getOrDefault("readers", "32"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+
+        new LoadTestMain(url).run(readers, warmupSeconds, durationSeconds);
+    }
+
+    private void run(int readers, int warmupSeconds, int durationSeconds) throws Exception {
+        System.out.printf("Load test against %s: %d readers, %d s warmup, %d s measured%n", baseUrl, readers, warmupSeconds, durationSeconds);
+
+        if (warmupSeconds > 0) {
+            runReaders(readers, warmupSeconds);
+        }
+
+        Map<String, Double> metricsBefore = scrapeMetrics();
+        long start = System.nanoTime();
+        List<Map<String, Recorder>> results = runReaders(readers, durationSeconds);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Map<String, Double> metricsAfter = scrapeMetrics();
+
+        printLatencies(merge(results), elapsedSeconds);
+        printRefreshes(metricsBefore, metricsAfter);
+    }
+
+    private List<Map<String, Recorder>> runReaders(int readers, int seconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<String> names = new ArrayList<>(endpoints.keySet());
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<Map<String, Recorder>>> futures = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                futures.add(pool.submit(() -> {
+                    Map<String, Recorder> recorders = new HashMap<>();
+                    while (System.nanoTime() < deadline) {
+                        String name = names.get(random().nextInt(names.size()));
+                        recorders.computeIfAbsent(name, n -> new Recorder()).record(get(endpoints.get(name).get()));
+                    }
+                    return recorders;
+                }));
+            }
+            List<Map<String, Recorder>> results = new ArrayList<>();
+            for (Future<Map<String, Recorder>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Send one request and time it
+     * @return The latency in nanoseconds, or -1 if the request failed
+     */
+    private long get(String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long elapsed = System.nanoTime() - start;
+            return response.statusCode() < 400 ? elapsed : -1;
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static Map<String, Recorder> merge(List<Map<String, Recorder>> results) {
+        Map<String, Recorder> merged = new TreeMap<>();
+        for (Map<String, Recorder> result : results) {
+            result.forEach((name, recorder) -> merged.computeIfAbsent(name, n -> new Recorder()).addAll(recorder));
+        }
+        return merged;
+    }
+
+    private static void printLatencies(Map<String, Recorder> recorders, double elapsedSeconds) {
+        System.out.println();
+        System.out.printf("%-24s %9s %9s %7s %9s %9s %9s %9s%n", "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        Recorder all = new Recorder();
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            printRow(entry.getKey(), entry.getValue(), elapsedSeconds);
+            all.addAll(entry.getValue());
+        }
+        printRow("all", all, elapsedSeconds);
+    }
+
+    private static void printRow(String name, Recorder recorder, double elapsedSeconds) {
+        long[] sorted = recorder.sorted();
+        System.out.printf(Locale.ROOT, "%-24s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f%n",
+                name, sorted.length, sorted.length / elapsedSeconds, recorder.errors,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private void printRefreshes(Map<String, Double> before, Map<String, Double> after) {
+        System.out.println();
+        double refreshes = delta(before, after, "iett_refresh_duration_seconds_count{dataset=\"bus\"}");
+        if (refreshes <= 0) {
+            System.out.println("No bus refresh completed during the measured period; lower iett.refresh.bus-interval-seconds or run longer");
+            return;
+        }
+
+        double total = delta(before, after, "iett_refresh_duration_seconds_sum{dataset=\"bus\"}");
+        double failures = delta(before, after, "iett_refresh_results_total{dataset=\"bus\",outcome=\"failure\"}");
+        System.out.printf(Locale.ROOT, "Bus refreshes: %.0f (%.0f failed), mean %.1f ms%n", refreshes, failures, total / refreshes * 1000);
+
+        String stagePrefix = "iett_refresh_stage_seconds_sum{dataset=\"bus\",stage=\"";
+        for (String key : after.keySet()) {
+            if (key.startsWith(stagePrefix)) {
+                String stage = key.substring(stagePrefix.length(), key.length() - 2);
+                String countKey = "iett_refresh_stage_seconds_count" + key.substring("iett_refresh_stage_seconds_sum".length());
+                double count = delta(before, after, countKey);
+                if (count > 0) {
+                    System.out.printf(Locale.ROOT, "  %-18s mean %8.1f ms%n", stage, delta(before, after, key) / count * 1000);
+                }
+            }
+        }
+        for (String meter : List.of("iett_soap_roundtrip_seconds", "iett_soap_decode_seconds")) {
+            String sumKey = meter + "_sum{method=\"GetFiloAracKonum_json\"}";
+            double count = delta(before, after, meter + "_count{method=\"GetFiloAracKonum_json\"}");
+            if (count > 0) {
+                System.out.printf(Locale.ROOT, "  %-18s mean %8.1f ms%n", meter.substring("iett_soap_".length(), meter.length() - "_seconds".length()),
+                        delta(before, after, sumKey) / count * 1000);
+            }
+        }
+    }
+
+    private static double delta(Map<String, Double> before, Map<String, Double> after, String key) {
+        return after.getOrDefault(key, 0.0) - before.getOrDefault(key, 0.0);
+    }
+
+    /**
+     * Read the backend's Prometheus metrics, keyed by name and labels without the common application label
+     */
+    private Map<String, Double> scrapeMetrics() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/prometheus")).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Map<String, Double> metrics = new HashMap<>();
+        if (response.statusCode() != 200) {
+            System.out.println("Could not read /actuator/prometheus (HTTP " + response.statusCode() + "), refresh times are not reported");
+            return metrics;
+        }
+        for (String line : response.body().split("\n")) {
+            Matcher matcher = METRIC_LINE.matcher(line);
+            if (matcher.matches() && matcher.group(1).startsWith("iett_")) {
+                String labels = Arrays.stream(matcher.group(2).split(","))
+                        .filter(label -> !label.isEmpty() && !label.startsWith("application="))
+                        .reduce((a, b) -> a + "," + b)
+                        .orElse("");
+                metrics.put(matcher.group(1) + "{" + labels + "}", Double.parseDouble(matcher.group(3)));
+            }
+        }
+        return metrics;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private static ThreadLocalRandom random() {
+        return ThreadLocalRandom.current();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Latencies of one endpoint, kept in full so percentiles are exact
+     */
+    private static final class Recorder {
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        private void record(long latency) {
+            if (latency < 0) {
+                errors++;
+                return;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+
+        private void addAll(Recorder other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i]);
+            }
+            errors += other.errors;
+        }
+
+        private long[] sorted() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
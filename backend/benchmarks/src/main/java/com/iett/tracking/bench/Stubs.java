@@ -0,0 +1,50 @@
+package com.iett.tracking.bench;
+
+import com.iett.tracking.repository.BusLabelRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+
+/**
+ * Collaborators for building backend services outside Spring. Benchmarks only exercise in-memory
+ * code, so anything that would reach the database is a stub that throws on first use, naming what
+ * was called, instead of a null that fails somewhere in the middle of a measurement.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * A stub of an interface whose every method throws
+     * @param type The interface
+     * @return The stub
+     * @param <T> The interface type
+     */
+    public static <T> T unavailable(Class<T> type) {
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "Unavailable " + type.getSimpleName();
+                };
+            }
+            throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName() + " is not available in benchmarks");
+        });
+        return type.cast(stub);
+    }
+
+    public static JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(unavailable(DataSource.class));
+    }
+
+    /**
+     * A label repository whose in-memory dictionary works and whose database side throws
+     */
+    public static BusLabelRepository busLabelRepository() {
+        return new BusLabelRepository(jdbcTemplate(), unavailable(PlatformTransactionManager.class));
+    }
+}
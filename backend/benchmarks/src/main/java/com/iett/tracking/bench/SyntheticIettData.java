@@ -0,0 +1,155 @@
+package com.iett.tracking.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.dto.soap.SoapGarageDTO;
+import com.iett.tracking.model.Garage;
+import com.iett.tracking.util.SoapUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic fleets and garages shaped like the real IETT SOAP payloads.
+ * The same seed always produces the same data, so benchmark runs are comparable.
+ */
+public final class SyntheticIettData {
+
+    public static final int GARAGE_COUNT = 40;
+
+    // Zone the IETT services write their local times in
+    public static final ZoneId TIME_ZONE = ZoneId.of("Europe/Istanbul");
+
+    // Roughly the built-up area of Istanbul on both sides of the Bosphorus
+    private static final double MIN_LATITUDE = 40.85;
+    private static final double MAX_LATITUDE = 41.25;
+    private static final double MIN_LONGITUDE = 28.50;
+    private static final double MAX_LONGITUDE = 29.45;
+
+    private static final String[] OPERATORS = {
+            "İETT", "Özel Halk Otobüsü", "Otobüs A.Ş.", "İstanbul Halk Ulaşım", "Yeni İstanbul Özel Halk"
+    };
+    private static final String[] DOOR_PREFIXES = {"A", "B", "C", "K", "O"};
+    private static final String[] PLATE_LETTERS = {"HO", "HA", "KZ", "TY", "ME", "ZB"};
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private SyntheticIettData() {
+    }
+
+    public static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return objectMapper;
+    }
+
+    /**
+     * Generate a fleet as returned by GetFiloAracKonum_json
+     * @param vehicles Number of vehicles
+     * @param seed Random seed
+     * @return The vehicles
+     */
+    public static List<SoapBusDTO> buses(int vehicles, long seed) {
+        Random random = new Random(seed);
+        LocalDateTime now = LocalDateTime.of(2024, 5, 14, 8, 30, 0);
+        List<SoapBusDTO> buses = new ArrayList<>(vehicles);
+        for (int i = 0; i < vehicles; i++) {
+            SoapBusDTO bus = new SoapBusDTO();
+            bus.setOperator(OPERATORS[random.nextInt(OPERATORS.length)]);
+            bus.setGarage(garageCode(random.nextInt(GARAGE_COUNT)));
+            bus.setDoorNo(DOOR_PREFIXES[i % DOOR_PREFIXES.length] + "-" + (1000 + i));
+            bus.setTime(now.minusSeconds(random.nextInt(600)).format(TIME_FORMAT));
+            bus.setLatitude(coordinate(MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE)));
+            bus.setLongitude(coordinate(MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE)));
+            bus.setSpeed(random.nextInt(4) == 0 ? "0" : Integer.toString(random.nextInt(70)));
+            // A small share of vehicles report no plate, as in the real feed
+            bus.setLicensePlate(random.nextInt(40) == 0 ? ""
+                    : "34 " + PLATE_LETTERS[random.nextInt(PLATE_LETTERS.length)] + " " + (1000 + i));
+            buses.add(bus);
+        }
+        return buses;
+    }
+
+    /**
+     * Generate the garages as returned by GetGaraj_json, with "POINT (longitude latitude)" coordinates
+     * @param seed Random seed
+     * @return The garages
+     */
+    public static List<SoapGarageDTO> soapGarages(long seed) {
+        Random random = new Random(seed);
+        List<SoapGarageDTO> garages = new ArrayList<>(GARAGE_COUNT);
+        for (int i = 0; i < GARAGE_COUNT; i++) {
+            double latitude = MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE);
+            double longitude = MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE);
+            garages.add(new SoapGarageDTO((long) i + 1, "Garaj " + (i + 1), garageCode(i),
+                    "POINT (" + coordinate(longitude) + " " + coordinate(latitude) + ")"));
+        }
+        return garages;
+    }
+
+    /**
+     * Garage entities as stored after ingest, with "latitude,longitude" coordinates
+     * @param seed Random seed
+     * @param soapUtils Converts the POINT coordinates
+     * @return The garages
+     */
+    public static List<Garage> garages(long seed, SoapUtils soapUtils) {
+        List<Garage> garages = new ArrayList<>(GARAGE_COUNT);
+        for (SoapGarageDTO dto : soapGarages(seed)) {
+            Garage garage = new Garage();
+            garage.setId(dto.getId());
+            garage.setGarageName(dto.getGarageName());
+            garage.setGarageCode(dto.getGarageCode());
+            garage.setCoordinate(soapUtils.parsePointToCoordinate(dto.getCoordinate()));
+            garages.add(garage);
+        }
+        return garages;
+    }
+
+    /**
+     * Serialize records to the JSON text carried inside the SOAP result element
+     * @param records The records
+     * @param objectMapper The mapper
+     * @return The JSON array
+     */
+    public static String json(List<?> records, ObjectMapper objectMapper) {
+        try {
+            return objectMapper.writeValueAsString(records);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Wrap a JSON payload in the SOAP 1.1 envelope the IETT services return
+     * @param method The SOAP method, e.g. "GetFiloAracKonum_json"
+     * @param json The JSON payload
+     * @return The encoded response body
+     */
+    public static byte[] soapEnvelope(String method, String json) {
+        String escaped = json.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        String envelope = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
+                + "<soap:Body><" + method + "Response xmlns=\"http://tempuri.org/\">"
+                + "<" + method + "Result>" + escaped + "</" + method + "Result>"
+                + "</" + method + "Response></soap:Body></soap:Envelope>";
+        return envelope.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String garageCode(int index) {
+        return String.format(Locale.ROOT, "G%02d", index + 1);
+    }
+
+    private static String coordinate(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+}
@@ -0,0 +1,75 @@
+package com.iett.tracking.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iett.tracking.bench.Stubs;
+import com.iett.tracking.bench.SyntheticIettData;
+import com.iett.tracking.fleet.FleetColumns;
+import com.iett.tracking.fleet.FleetSnapshotStore;
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.service.SyntheticFleet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO conversion as done by {@code BusController.convertToDTO}, alone and together
+ * with the JSON serialization every list endpoint performs on the result, and the same
+ * conversion read straight from the snapshot columns.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BusDTOConversionBenchmark {
+
+    @Param({"1000", "5000", "20000"})
+    public int vehicles;
+
+    private ObjectMapper objectMapper;
+    private List<Bus> buses;
+    private FleetColumns columns;
+
+    @Setup
+    public void setUp() {
+        objectMapper = SyntheticIettData.objectMapper();
+        buses = SyntheticFleet.buses(vehicles, 42);
+        columns = new FleetSnapshotStore(1, 1, event -> { }, Stubs.busLabelRepository()).publish(buses).getColumns();
+    }
+
+    @Benchmark
+    public List<BusDTO> convertToDTO() {
+        List<BusDTO> dtos = new ArrayList<>(buses.size());
+        for (Bus bus : buses) {
+            dtos.add(BusDTO.fromBus(bus));
+        }
+        return dtos;
+    }
+
+    @Benchmark
+    public List<BusDTO> convertFromColumns() {
+        List<BusDTO> dtos = new ArrayList<>(columns.size());
+        for (int row = 0; row < columns.size(); row++) {
+            dtos.add(BusDTO.fromRow(columns, row));
+        }
+        return dtos;
+    }
+
+    @Benchmark
+    public byte[] convertAndSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(convertToDTO());
+    }
+}
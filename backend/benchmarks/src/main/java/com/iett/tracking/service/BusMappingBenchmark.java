@@ -0,0 +1,102 @@
+package com.iett.tracking.service;
+
+import com.iett.tracking.bench.SyntheticIettData;
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.geo.GarageSpatialIndex;
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.model.Garage;
+import com.iett.tracking.util.SoapUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a decoded fleet to entities including the nearest garage, as a refresh does,
+ * and the nearest-garage lookup that dominates it.
+ * Each operation processes the whole fleet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BusMappingBenchmark {
+
+    @Param({"1000", "5000", "20000"})
+    public int vehicles;
+
+    private SoapUtils soapUtils;
+    private BusSoapService busSoapService;
+    private GarageSpatialIndex garageIndex;
+    private List<Garage> garages;
+    private List<SoapBusDTO> dtos;
+    private double[] latitudes;
+    private double[] longitudes;
+
+    @Setup
+    public void setUp() {
+        soapUtils = new SoapUtils(SyntheticIettData.objectMapper(), SyntheticIettData.TIME_ZONE);
+        busSoapService = SyntheticFleet.busSoapService(soapUtils);
+        garages = SyntheticIettData.garages(7, soapUtils);
+        garageIndex = GarageSpatialIndex.build(garages, soapUtils);
+        dtos = SyntheticIettData.buses(vehicles, 42);
+
+        latitudes = new double[dtos.size()];
+        longitudes = new double[dtos.size()];
+        for (int i = 0; i < dtos.size(); i++) {
+            latitudes[i] = Double.parseDouble(dtos.get(i).getLatitude());
+            longitudes[i] = Double.parseDouble(dtos.get(i).getLongitude());
+        }
+    }
+
+    @Benchmark
+    public void mapToBusEntity(Blackhole blackhole) {
+        for (SoapBusDTO dto : dtos) {
+            Bus bus = busSoapService.mapToBusEntity(dto);
+            busSoapService.assignNearestGarage(bus, garageIndex);
+            blackhole.consume(bus);
+        }
+    }
+
+    @Benchmark
+    public void nearestGarageIndexed(Blackhole blackhole) {
+        for (int i = 0; i < latitudes.length; i++) {
+            blackhole.consume(garageIndex.nearest(latitudes[i], longitudes[i]));
+        }
+    }
+
+    /**
+     * Linear scan over every garage, parsing its coordinate string each time,
+     * as the nearest-garage calculation worked before the spatial index
+     */
+    @Benchmark
+    public void nearestGarageLinearScan(Blackhole blackhole) {
+        for (int i = 0; i < latitudes.length; i++) {
+            Garage nearest = null;
+            double minDistance = Double.MAX_VALUE;
+            for (Garage garage : garages) {
+                String[] parts = garage.getCoordinate().split(",");
+                double distance = soapUtils.calculateDistance(latitudes[i], longitudes[i],
+                        Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    nearest = garage;
+                }
+            }
+            blackhole.consume(nearest);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.iett.tracking.service;
+
+import com.iett.tracking.bench.Stubs;
+import com.iett.tracking.bench.SyntheticIettData;
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.fleet.FleetSnapshotStore;
+import com.iett.tracking.geo.GarageLocator;
+import com.iett.tracking.geo.GarageSpatialIndex;
+import com.iett.tracking.metrics.IngestMetrics;
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.repository.BusBulkWriter;
+import com.iett.tracking.repository.BusLabelRepository;
+import com.iett.tracking.repository.BusPositionRepository;
+import com.iett.tracking.repository.BusRepository;
+import com.iett.tracking.repository.DataRetrievalLogRepository;
+import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.util.SoapEnvelopeDecoder;
+import com.iett.tracking.util.SoapUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bus entities mapped from a synthetic fleet exactly as a refresh would map them,
+ * for benchmarks that start from ingested data.
+ */
+public final class SyntheticFleet {
+
+    private SyntheticFleet() {
+    }
+
+    public static List<Bus> buses(int vehicles, long seed) {
+        SoapUtils soapUtils = new SoapUtils(SyntheticIettData.objectMapper(), SyntheticIettData.TIME_ZONE);
+        GarageSpatialIndex garageIndex = GarageSpatialIndex.build(SyntheticIettData.garages(seed, soapUtils), soapUtils);
+        BusSoapService busSoapService = busSoapService(soapUtils);
+
+        List<Bus> buses = new ArrayList<>(vehicles);
+        for (SoapBusDTO dto : SyntheticIettData.buses(vehicles, seed)) {
+            Bus bus = busSoapService.mapToBusEntity(dto);
+            busSoapService.assignNearestGarage(bus, garageIndex);
+            buses.add(bus);
+        }
+        return buses;
+    }
+
+    /**
+     * A bus service built through its real constructor. The in-memory collaborators are real;
+     * repositories and the database are {@link Stubs} that throw if the mapping ever reaches them.
+     * @param soapUtils The parsing utilities to map with
+     * @return The service
+     */
+    public static BusSoapService busSoapService(SoapUtils soapUtils) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BusLabelRepository busLabelRepository = Stubs.busLabelRepository();
+        FleetSnapshotStore fleetSnapshotStore = new FleetSnapshotStore(1, 1, event -> { }, busLabelRepository);
+        return new BusSoapService(
+                new SoapTransport(new RestTemplate(), new SoapEnvelopeDecoder(SyntheticIettData.objectMapper()),
+                        new PoolingHttpClientConnectionManager(), meterRegistry),
+                Stubs.unavailable(BusRepository.class),
+                new BusBulkWriter(Stubs.jdbcTemplate(), busLabelRepository),
+                new GarageLocator(Stubs.unavailable(GarageRepository.class), soapUtils),
+                Stubs.unavailable(DataRetrievalLogRepository.class),
+                soapUtils,
+                fleetSnapshotStore,
+                new BusPositionHistoryService(new BusPositionRepository(Stubs.jdbcTemplate())),
+                new IngestMetrics(meterRegistry, fleetSnapshotStore),
+                busLabelRepository);
+    }
+}
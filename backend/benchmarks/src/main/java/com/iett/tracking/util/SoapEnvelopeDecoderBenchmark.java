@@ -0,0 +1,54 @@
+package com.iett.tracking.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iett.tracking.bench.SyntheticIettData;
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a complete GetFiloAracKonum_json response the way the refresh does, from raw bytes to records.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SoapEnvelopeDecoderBenchmark {
+
+    private static final String METHOD = "GetFiloAracKonum_json";
+
+    @Param({"1000", "5000", "20000"})
+    public int vehicles;
+
+    private SoapEnvelopeDecoder decoder;
+    private byte[] envelope;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = SyntheticIettData.objectMapper();
+        decoder = new SoapEnvelopeDecoder(objectMapper);
+        envelope = SyntheticIettData.soapEnvelope(METHOD,
+                SyntheticIettData.json(SyntheticIettData.buses(vehicles, 42), objectMapper));
+    }
+
+    @Benchmark
+    public int decodeBusEnvelope(Blackhole blackhole) throws IOException {
+        return decoder.decode(new ByteArrayInputStream(envelope), METHOD + "Result", SoapBusDTO.class, blackhole::consume);
+    }
+}
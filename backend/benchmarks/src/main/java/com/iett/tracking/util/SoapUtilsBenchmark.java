@@ -0,0 +1,107 @@
+package com.iett.tracking.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iett.tracking.bench.SyntheticIettData;
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.dto.soap.SoapGarageDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SoapUtils} parsing helpers. Whole-payload benchmarks run once per fleet size;
+ * per-field benchmarks parse one value per operation, cycling through realistic samples.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SoapUtilsBenchmark {
+
+    private static final TypeReference<List<SoapBusDTO>> BUS_LIST = new TypeReference<>() {};
+
+    @State(Scope.Benchmark)
+    public static class Payload {
+
+        @Param({"1000", "5000", "20000"})
+        public int vehicles;
+
+        SoapUtils soapUtils;
+        String json;
+        JsonNode nestedTree;
+
+        @Setup
+        public void setUp() throws Exception {
+            ObjectMapper objectMapper = SyntheticIettData.objectMapper();
+            soapUtils = new SoapUtils(objectMapper, SyntheticIettData.TIME_ZONE);
+            json = SyntheticIettData.json(SyntheticIettData.buses(vehicles, 42), objectMapper);
+            // The IETT result is a bare array; nest it so the depth-first search has to walk siblings first
+            nestedTree = objectMapper.readTree("{\"status\":\"OK\",\"meta\":{\"source\":\"iett\",\"count\":" + vehicles
+                    + "},\"result\":{\"data\":" + json + "}}");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Fields {
+
+        private static final int SAMPLES = 1024;
+
+        SoapUtils soapUtils;
+        String[] points;
+        String[] times;
+        int next;
+
+        @Setup
+        public void setUp() {
+            soapUtils = new SoapUtils(SyntheticIettData.objectMapper(), SyntheticIettData.TIME_ZONE);
+            List<SoapGarageDTO> garages = SyntheticIettData.soapGarages(7);
+            List<SoapBusDTO> buses = SyntheticIettData.buses(SAMPLES, 7);
+            points = new String[SAMPLES];
+            times = new String[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                points[i] = garages.get(i % garages.size()).getCoordinate();
+                times[i] = buses.get(i).getTime();
+            }
+        }
+
+        int nextIndex() {
+            next = (next + 1) & (SAMPLES - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public List<SoapBusDTO> parseJsonToList(Payload payload) {
+        return payload.soapUtils.parseJsonToList(payload.json, BUS_LIST);
+    }
+
+    @Benchmark
+    public JsonNode findArrayNode(Payload payload) {
+        return payload.soapUtils.findArrayNode(payload.nestedTree);
+    }
+
+    @Benchmark
+    public String parsePointToCoordinate(Fields fields) {
+        return fields.soapUtils.parsePointToCoordinate(fields.points[fields.nextIndex()]);
+    }
+
+    @Benchmark
+    public LocalDateTime parseTimeStringToDateTime(Fields fields) {
+        return fields.soapUtils.parseTimeStringToDateTime(fields.times[fields.nextIndex()]);
+    }
+}
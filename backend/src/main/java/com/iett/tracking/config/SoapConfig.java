@@ -2,11 +2,32 @@ package com.iett.tracking.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class SoapConfig {
     
@@ -16,9 +37,64 @@ public class SoapConfig {
     @Value("${iett.soap.bus-service-url}")
     private String busServiceUrl;
     
+    @Value("${iett.soap.http.max-connections}")
+    private int maxConnections;
+    
+    @Value("${iett.soap.http.max-connections-per-route}")
+    private int maxConnectionsPerRoute;
+    
+    @Value("${iett.soap.http.connect-timeout-ms}")
+    private long connectTimeoutMs;
+    
+    @Value("${iett.soap.http.response-timeout-ms}")
+    private long responseTimeoutMs;
+    
+    @Value("${iett.soap.http.connection-request-timeout-ms}")
+    private long connectionRequestTimeoutMs;
+    
+    @Value("${iett.soap.http.idle-eviction-seconds}")
+    private long idleEvictionSeconds;
+    
+    @Value("${iett.soap.http.max-retries}")
+    private int maxRetries;
+    
+    @Value("${iett.soap.http.retry-backoff-ms}")
+    private long retryBackoffMs;
+    
+    @Bean
+    public PoolingHttpClientConnectionManager soapConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .build())
+                .build();
+    }
+    
+    /**
+     * Pooled, keep-alive HTTP client for the IETT SOAP services. Content compression
+     * (Accept-Encoding: gzip, deflate) is negotiated and decoded transparently by the client.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient soapHttpClient(PoolingHttpClientConnectionManager soapConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(soapConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                        .build())
+                .setRetryStrategy(new SoapRetryStrategy(maxRetries, retryBackoffMs))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                .build();
+    }
+    
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(CloseableHttpClient soapHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(soapHttpClient));
     }
     
     @Bean
@@ -27,4 +103,45 @@ public class SoapConfig {
         objectMapper.registerModule(new JavaTimeModule());
         return objectMapper;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Retries connection failures and overload responses with exponential backoff.
+     * The IETT calls are read-only, so the POST requests are safe to repeat.
+     * Timeouts are not retried so a hanging upstream cannot multiply the wait.
+     */
+    static class SoapRetryStrategy extends DefaultHttpRequestRetryStrategy {
+        
+        private final long backoffMs;
+        
+        SoapRetryStrategy(int maxRetries, long backoffMs) {
+            super(maxRetries,
+                    TimeValue.ofMilliseconds(backoffMs),
+                    List.of(InterruptedIOException.class, UnknownHostException.class, SSLException.class),
+                    List.of(HttpStatus.SC_TOO_MANY_REQUESTS, HttpStatus.SC_BAD_GATEWAY,
+                            HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_GATEWAY_TIMEOUT));
+            this.backoffMs = backoffMs;
+        }
+        
+        @Override
+        protected boolean handleAsIdempotent(HttpRequest request) {
+            return true;
+        }
+        
+        @Override
+        public TimeValue getRetryInterval(HttpRequest request, IOException exception, int execCount, HttpContext context) {
+            return backoff(execCount);
+        }
+        
+        @Override
+        public TimeValue getRetryInterval(HttpResponse response, int execCount, HttpContext context) {
+            TimeValue retryAfter = super.getRetryInterval(response, execCount, context);
+            TimeValue backoff = backoff(execCount);
+            return retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
+        }
+        
+        private TimeValue backoff(int execCount) {
+            long delay = backoffMs << Math.min(execCount - 1, 10);
+            return TimeValue.of(delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -1,16 +1,98 @@
 package com.iett.tracking.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    /**
+     * Media types the read endpoints are written in, in the order the message converters are tried
+     */
+    private static final List<MediaType> API_MEDIA_TYPES = List.of(
+            MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, MediaType.valueOf(APPLICATION_SMILE_VALUE));
+
+    private final ObjectMapper objectMapper;
+
+    public WebConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Binary encodings of the same JSON model, for clients that ask for them with an Accept header.
+     * CBOR is plain RFC 8949 so any decoder can read it; Smile writes each repeated field name and
+     * short string value once and refers back to it, which is what makes the full fleet small.
+     * Both use the JSON mapper's configuration, so dates and field names match the JSON output.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+
+        converters.add(new MappingJackson2CborHttpMessageConverter(objectMapper.copyWith(new CBORFactory())));
+        converters.add(new MappingJackson2SmileHttpMessageConverter(objectMapper.copyWith(SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build())));
+    }
+
+    /**
+     * Pick the media type a read endpoint answers an Accept header with, the way the message
+     * converters do: the highest quality wins, an explicit type beats a wildcard, and JSON comes first
+     * otherwise. Lets a controller name the representation in its ETag before writing anything.
+     * @param accept The Accept request header, may be null
+     * @return The negotiated media type, JSON if the header is missing, malformed or accepts none of them
+     */
+    public static MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        MediaType best = MediaType.APPLICATION_JSON;
+        double bestQuality = 0;
+        boolean bestExplicit = false;
+        for (MediaType mediaType : API_MEDIA_TYPES) {
+            for (MediaType accepted : acceptedTypes) {
+                if (!accepted.includes(mediaType)) {
+                    continue;
+                }
+                double quality = accepted.getQualityValue();
+                boolean explicit = !accepted.isWildcardType() && !accepted.isWildcardSubtype();
+                if (quality > bestQuality || (quality == bestQuality && explicit && !bestExplicit)) {
+                    best = mediaType;
+                    bestQuality = quality;
+                    bestExplicit = explicit;
+                }
+            }
+        }
+        return best;
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -1,79 +1,471 @@
 package com.iett.tracking.controller;
 
+import com.iett.tracking.config.WebConfig;
+import com.iett.tracking.dto.BusClusterDTO;
+import com.iett.tracking.dto.BusClustersDTO;
 import com.iett.tracking.dto.BusDTO;
+import com.iett.tracking.dto.BusPositionDTO;
+import com.iett.tracking.dto.CursorPageDTO;
+import com.iett.tracking.dto.FleetAggregateDTO;
+import com.iett.tracking.dto.FleetChangesDTO;
+import com.iett.tracking.dto.FleetSummaryDTO;
+import com.iett.tracking.dto.NearbyBusDTO;
 import com.iett.tracking.dto.SearchResponseDTO;
+import com.iett.tracking.dto.TrajectoryDTO;
+import com.iett.tracking.dto.VehicleStateDTO;
+import com.iett.tracking.export.ExportFormat;
+import com.iett.tracking.export.FleetExporter;
+import com.iett.tracking.fleet.BusSearchIndex;
+import com.iett.tracking.fleet.FleetChangeLog;
+import com.iett.tracking.fleet.FleetSnapshot;
+import com.iett.tracking.fleet.FleetStats;
+import com.iett.tracking.fleet.VehicleStateTracker;
+import com.iett.tracking.fleet.VehicleStates;
+import com.iett.tracking.geo.BoundingBox;
+import com.iett.tracking.geo.BusClusterIndex;
+import com.iett.tracking.geo.GarageLocator;
 import com.iett.tracking.model.Bus;
-import com.iett.tracking.model.Garage;
 import com.iett.tracking.repository.BusRepository;
-import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.service.BusPositionHistoryService;
 import com.iett.tracking.service.BusSoapService;
+import com.iett.tracking.stream.FleetStreamFilter;
+import com.iett.tracking.stream.FleetStreamService;
+import com.iett.tracking.util.EntityTag;
+import com.iett.tracking.util.PageCursor;
 import com.iett.tracking.util.SoapUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @RestController
-@RequestMapping("/api/buses")
+@RequestMapping(value = "/api/buses", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, WebConfig.APPLICATION_SMILE_VALUE})
 @Tag(name = "Bus", description = "Bus management APIs")
 public class BusController {
 
+    private static final String DATASET = "buses";
+
     private final BusRepository busRepository;
     private final BusSoapService busSoapService;
+    private final GarageLocator garageLocator;
+    private final BusPositionHistoryService busPositionHistoryService;
+    private final FleetStreamService fleetStreamService;
+    private final FleetExporter fleetExporter;
     private final SoapUtils soapUtils;
-    private final GarageRepository garageRepository;
+    private final VehicleStateTracker vehicleStateTracker;
+
+    @Value("${iett.http.bus-max-age-seconds}")
+    private long maxAgeSeconds;
+
+    @Value("${iett.history.trajectory-default-tolerance-meters}")
+    private double defaultTrajectoryToleranceMeters;
+
+    @Value("${iett.vehicles.stale-after-minutes}")
+    private long staleAfterMinutes;
 
     @Autowired
-    public BusController(BusRepository busRepository, BusSoapService busSoapService, SoapUtils soapUtils, GarageRepository garageRepository) {
+    public BusController(BusRepository busRepository, BusSoapService busSoapService, GarageLocator garageLocator,
+                         BusPositionHistoryService busPositionHistoryService, FleetStreamService fleetStreamService,
+                         FleetExporter fleetExporter, SoapUtils soapUtils, VehicleStateTracker vehicleStateTracker) {
         this.busRepository = busRepository;
         this.busSoapService = busSoapService;
+        this.garageLocator = garageLocator;
+        this.busPositionHistoryService = busPositionHistoryService;
+        this.fleetStreamService = fleetStreamService;
+        this.fleetExporter = fleetExporter;
         this.soapUtils = soapUtils;
-        this.garageRepository = garageRepository;
+        this.vehicleStateTracker = vehicleStateTracker;
     }
 
     @GetMapping
-    @Operation(summary = "Get a paginated list of buses", description = "Returns up to 20 buses per page from the database")
+    @Operation(summary = "Get a paginated list of buses", description = "Returns up to 20 buses per page from the in-memory fleet snapshot")
     public ResponseEntity<List<BusDTO>> getAllBuses(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
         if (size > 20) {
             size = 20;
         }
         
-        // First, ensure we have up-to-date data from SOAP service if needed
-        busSoapService.getBusData();
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "page", page, size);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         
-        Pageable pageable = PageRequest.of(page, size, Sort.by("doorNo").ascending());
-        Page<Bus> busPage = busRepository.findAll(pageable);
+        List<BusDTO> busDTOs = convertToDTOs(snapshot, snapshot.page(page, size));
+                
+        return ok(etag, busDTOs);
+    }
+    
+    @GetMapping("/cursor")
+    @Operation(summary = "Page through buses with a cursor", description = "Returns up to 200 buses ordered by door number. Pass the returned nextCursor to get the next page; all pages come from the fleet version the first page was read from. Returns 410 when that version has expired and paging must restart")
+    public ResponseEntity<CursorPageDTO<BusDTO>> getBusesByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        // Clamped once, so the page, its cursor and the tag all use the same size
+        size = Math.max(1, Math.min(size, 200));
         
-        List<BusDTO> busDTOs = busPage.getContent().stream()
-                .map(this::convertToDTO)
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        Integer afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            PageCursor pageCursor;
+            try {
+                pageCursor = PageCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            
+            Optional<FleetSnapshot> snapshotOpt = busSoapService.findFleetSnapshot(pageCursor.getVersion());
+            if (snapshotOpt.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.GONE).build();
+            }
+            snapshot = snapshotOpt.get();
+            afterId = (int) pageCursor.getLastKey();
+        }
+        
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "cursor", afterId, size);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        // One extra row tells whether another page follows
+        int[] rows = snapshot.pageAfter(afterId, size + 1);
+        boolean hasMore = rows.length > size;
+        int[] pageRows = hasMore ? Arrays.copyOf(rows, size) : rows;
+        
+        List<BusDTO> busDTOs = convertToDTOs(snapshot, pageRows);
+        
+        CursorPageDTO<BusDTO> response = CursorPageDTO.<BusDTO>builder()
+                .results(busDTOs)
+                .count(busDTOs.size())
+                .version(snapshot.getVersion())
+                .nextCursor(hasMore ? new PageCursor(snapshot.getVersion(), snapshot.getColumns().id(pageRows[pageRows.length - 1])).encode() : null)
+                .hasMore(hasMore)
+                .build();
+        
+        return ok(etag, response);
+    }
+    
+    @GetMapping("/changes")
+    @Operation(summary = "Get fleet changes since a version", description = "Returns the buses added, moved or removed since the given fleet version; buses that only reported new attributes without changing position are left out. Falls back to the full fleet when the version is unknown or too old")
+    public ResponseEntity<FleetChangesDTO> getFleetChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "changes", since);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        if (since == snapshot.getVersion()) {
+            return ok(etag, FleetChangesDTO.builder()
+                    .fromVersion(since)
+                    .version(snapshot.getVersion())
+                    .full(false)
+                    .added(List.of())
+                    .moved(List.of())
+                    .removed(List.of())
+                    .build());
+        }
+        
+        Optional<FleetChangeLog.FleetChanges> changesOpt = since > 0 && since < snapshot.getVersion()
+                ? busSoapService.getFleetChangesSince(since)
+                : Optional.empty();
+        
+        // The log only keeps ids; the buses are read from the snapshot the changes lead to
+        Optional<FleetSnapshot> targetOpt = changesOpt
+                .flatMap(changes -> busSoapService.findFleetSnapshot(changes.getToVersion()));
+        
+        if (targetOpt.isEmpty()) {
+            return ok(etag, FleetChangesDTO.builder()
+                    .fromVersion(since)
+                    .version(snapshot.getVersion())
+                    .full(true)
+                    .added(convertToDTOs(snapshot, IntStream.range(0, snapshot.size()).toArray()))
+                    .moved(List.of())
+                    .removed(List.of())
+                    .build());
+        }
+        
+        FleetChangeLog.FleetChanges changes = changesOpt.get();
+        FleetSnapshot target = targetOpt.get();
+        if (target.getVersion() != snapshot.getVersion()) {
+            // A refresh landed in between, the tag would name the wrong version
+            etag = EntityTag.of(DATASET, target.getVersion(), WebConfig.negotiate(accept), "changes", since);
+        }
+        return ok(etag, FleetChangesDTO.builder()
+                .fromVersion(changes.getFromVersion())
+                .version(changes.getToVersion())
+                .full(false)
+                .added(convertToDTOs(target, changes.getAdded()))
+                .moved(convertToDTOs(target, changes.getMoved()))
+                .removed(changes.getRemoved())
+                .build());
+    }
+    
+    @GetMapping("/within")
+    @Operation(summary = "Get buses inside a bounding box", description = "Returns buses inside minLon,minLat,maxLon,maxLat ordered by door number, up to 5000")
+    public ResponseEntity<List<BusDTO>> getBusesWithin(
+            @RequestParam String bbox,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        if (limit > 5000) {
+            limit = 5000;
+        }
+        
+        BoundingBox box;
+        try {
+            box = BoundingBox.parse(bbox);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "within", box, limit);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        int[] rows = snapshot.within(box);
+        List<BusDTO> busDTOs = convertToDTOs(snapshot, Arrays.copyOf(rows, Math.min(rows.length, Math.max(limit, 0))));
+        
+        return ok(etag, busDTOs);
+    }
+    
+    @GetMapping("/clusters")
+    @Operation(summary = "Get bus clusters for a map viewport", description = "Returns the centroid and bus count of every grid cell of " + BusClusterIndex.CELL_PIXELS + " screen pixels that the viewport minLon,minLat,maxLon,maxLat touches at the given map zoom. Clusters of a single bus carry the bus. Cluster levels are precomputed for zoom 0 to " + BusClusterIndex.MAX_ZOOM + " on every refresh. At most limit clusters (max 5000) are returned; truncated is set when the viewport has more")
+    public ResponseEntity<BusClustersDTO> getBusClusters(
+            @RequestParam String bbox,
+            @RequestParam int zoom,
+            @RequestParam(defaultValue = "5000") int limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        if (limit > 5000) {
+            limit = 5000;
+        }
+        
+        BoundingBox box;
+        try {
+            box = BoundingBox.parse(bbox);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        int level = BusClusterIndex.clampZoom(zoom);
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "clusters", box, level, limit);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        List<BusClusterIndex.Cluster> clusters = snapshot.clusters(box, level);
+        int returned = Math.min(clusters.size(), Math.max(limit, 0));
+        List<BusClusterDTO> clusterDTOs = new ArrayList<>(returned);
+        int busCount = 0;
+        for (BusClusterIndex.Cluster cluster : clusters) {
+            busCount += cluster.getCount();
+            if (clusterDTOs.size() == returned) {
+                // Still counted, so busCount covers the whole viewport
+                continue;
+            }
+            clusterDTOs.add(BusClusterDTO.builder()
+                    .latitude(cluster.getLatitude())
+                    .longitude(cluster.getLongitude())
+                    .count(cluster.getCount())
+                    .bus(cluster.getRow() >= 0 ? BusDTO.fromRow(snapshot.getColumns(), cluster.getRow()) : null)
+                    .build());
+        }
+        
+        return ok(etag, BusClustersDTO.builder()
+                .version(snapshot.getVersion())
+                .zoom(level)
+                .busCount(busCount)
+                .truncated(returned < clusters.size())
+                .clusters(clusterDTOs)
+                .build());
+    }
+    
+    @GetMapping("/near")
+    @Operation(summary = "Get buses near a point", description = "Returns buses within radiusKm (max 50) of a point, closest first, up to 1000")
+    public ResponseEntity<List<NearbyBusDTO>> getBusesNear(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "1") double radiusKm,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        if (limit > 1000) {
+            limit = 1000;
+        }
+        
+        if (!Double.isFinite(lat) || !Double.isFinite(lon) || lat < -90 || lat > 90 || lon < -180 || lon > 180
+                || !(radiusKm > 0) || radiusKm > 50) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "near", lat, lon, radiusKm, limit);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        List<NearbyBusDTO> nearby = snapshot.near(lat, lon, radiusKm, soapUtils).stream()
+                .limit(Math.max(limit, 0))
+                .map(match -> NearbyBusDTO.builder()
+                        .bus(BusDTO.fromRow(snapshot.getColumns(), match.getRow()))
+                        .distanceKm(match.getDistance())
+                        .build())
                 .collect(Collectors.toList());
-                
-        return ResponseEntity.ok(busDTOs);
+        
+        return ok(etag, nearby);
+    }
+    
+    @GetMapping("/summary")
+    @Operation(summary = "Get a fleet summary", description = "Returns the bus count, stationary count, mean and max speed and distance-to-nearest-garage percentiles of the whole fleet, and per garage code for the buses assigned to and nearest to each garage. Precomputed for every fleet snapshot")
+    public ResponseEntity<FleetSummaryDTO> getFleetSummary(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "summary");
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        FleetStats stats = snapshot.getStats();
+        return ok(etag, FleetSummaryDTO.builder()
+                .version(snapshot.getVersion())
+                .createdAt(snapshot.getCreatedAt())
+                .fleet(FleetAggregateDTO.from(stats.getFleet()))
+                .assignedByGarage(convertToDTOs(stats.getByAssignedGarage()))
+                .nearestByGarage(convertToDTOs(stats.getByNearestGarage()))
+                .build());
+    }
+    
+    @GetMapping("/stale")
+    @Operation(summary = "Get stale buses", description = "Returns buses whose last real fix is older than the configured stale threshold, or that never sent one, oldest fix first, up to 5000. Answered from state tracked on every refresh")
+    public ResponseEntity<List<VehicleStateDTO>> getStaleBuses(
+            @RequestParam(defaultValue = "1000") int limit) {
+        
+        if (limit > 5000) {
+            limit = 5000;
+        }
+        
+        VehicleStates states = vehicleStateTracker.current();
+        int[] rows = states.findStale(soapUtils.now().minusMinutes(staleAfterMinutes));
+        return ResponseEntity.ok(convertToDTOs(states, Arrays.copyOf(rows, Math.min(rows.length, Math.max(limit, 0)))));
+    }
+    
+    @GetMapping("/stopped")
+    @Operation(summary = "Get stopped buses", description = "Returns buses that have reported no movement for at least the given number of minutes, longest stopped first, up to 5000. Answered from state tracked on every refresh")
+    public ResponseEntity<List<VehicleStateDTO>> getStoppedBuses(
+            @RequestParam(defaultValue = "10") int minMinutes,
+            @RequestParam(defaultValue = "1000") int limit) {
+        
+        if (minMinutes < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        if (limit > 5000) {
+            limit = 5000;
+        }
+        
+        VehicleStates states = vehicleStateTracker.current();
+        int[] rows = states.findStopped(soapUtils.now().minusMinutes(minMinutes));
+        return ResponseEntity.ok(convertToDTOs(states, Arrays.copyOf(rows, Math.min(rows.length, Math.max(limit, 0)))));
+    }
+    
+    @GetMapping(value = "/export", produces = {ExportFormat.NDJSON_VALUE, ExportFormat.CSV_VALUE})
+    @Operation(summary = "Export the whole fleet", description = "Streams every bus of the current fleet snapshot, ordered by door number, as NDJSON (format=ndjson, the default) or CSV (format=csv), without paging. Send Accept-Encoding: gzip for a compressed download")
+    public ResponseEntity<StreamingResponseBody> exportBuses(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        Optional<ExportFormat> exportFormat = ExportFormat.of(format);
+        if (exportFormat.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), MediaType.parseMediaType(exportFormat.get().getMediaType()), "export");
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        // The snapshot is immutable, so the body written later on an async thread matches the tag
+        return export(etag, "buses-" + snapshot.getVersion(), exportFormat.get(),
+                out -> fleetExporter.writeBuses(snapshot, exportFormat.get(), out));
+    }
+    
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream fleet changes", description = "Server-Sent Events stream of \"fleet\" events: the current fleet first, then the buses added, moved or removed after every refresh; buses that did not change position are left out. Optionally filtered by garage code and/or bounding box (minLon,minLat,maxLon,maxLat)")
+    public ResponseEntity<SseEmitter> streamFleetChanges(
+            @RequestParam(required = false) String garage,
+            @RequestParam(required = false) String bbox) {
+        
+        FleetStreamFilter filter;
+        try {
+            filter = FleetStreamFilter.of(garage, bbox);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        return fleetStreamService.subscribe(filter)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
     }
     
     @GetMapping("/{id}")
     @Operation(summary = "Get a bus by ID", description = "Returns a bus by its ID")
-    public ResponseEntity<BusDTO> getBusById(@PathVariable Integer id) {
-        busSoapService.getBusData();
+    public ResponseEntity<BusDTO> getBusById(
+            @PathVariable Integer id,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "id", id);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         
-        Optional<Bus> busOpt = busRepository.findById(id);
+        int row = snapshot.rowOf(id);
         
-        if (busOpt.isPresent()) {
-            return ResponseEntity.ok(convertToDTO(busOpt.get()));
+        if (row >= 0) {
+            return ok(etag, BusDTO.fromRow(snapshot.getColumns(), row));
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -84,38 +476,78 @@ public class BusController {
     public ResponseEntity<SearchResponseDTO<BusDTO>> searchBuses(
             @RequestParam String term,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
         if (size > 20) {
             size = 20;
         }
         
-        busSoapService.getBusData();
-        
-        List<Bus> buses = busRepository.findBySearchTerm(term);
-        
-        int start = page * size;
-        int end = Math.min(start + size, buses.size());
-        
-        List<Bus> paginatedBuses = (start < end) 
-            ? buses.subList(start, end) 
-            : List.of();
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        // Before the first snapshot the results come from the database, which has no version to tag
+        String etag = snapshot.getVersion() > 0 ? EntityTag.of(DATASET, snapshot.getVersion(), WebConfig.negotiate(accept), "search", term, page, size) : null;
+        if (etag != null && EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         
-        List<BusDTO> busDTOs = paginatedBuses.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        List<BusDTO> busDTOs;
+        int totalCount;
+        if (snapshot.getVersion() > 0) {
+            BusSearchIndex.SearchPage matches = snapshot.search(term, page, size);
+            busDTOs = convertToDTOs(snapshot, matches.getRows());
+            totalCount = matches.getTotalCount();
+        } else {
+            // No snapshot loaded yet, let the database page the results
+            Pageable pageable = PageRequest.of(Math.max(page, 0), Math.max(size, 1));
+            Page<Bus> busPage = busRepository.findBySearchTerm(term, pageable);
+            busDTOs = busPage.getContent().stream()
+                    .map(this::convertToDTO)
+                    .collect(Collectors.toList());
+            totalCount = (int) busPage.getTotalElements();
+        }
         
         SearchResponseDTO<BusDTO> response = SearchResponseDTO.<BusDTO>builder()
                 .results(busDTOs)
                 .count(busDTOs.size())
-                .totalCount(buses.size())
+                .totalCount(totalCount)
                 .page(page)
                 .size(size)
                 .searchTerm(term)
                 .hasMatches(!busDTOs.isEmpty())
                 .build();
         
-        return ResponseEntity.ok(response);
+        return etag != null ? ok(etag, response) : ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/history")
+    @Operation(summary = "Get the position history of a bus", description = "Returns the recorded positions of a bus by door number within a time window, oldest first")
+    public ResponseEntity<List<BusPositionDTO>> getBusHistory(
+            @RequestParam String doorNo,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        return ResponseEntity.ok(busPositionHistoryService.findPositions(doorNo, from, to));
+    }
+    
+    @GetMapping("/{id}/trajectory")
+    @Operation(summary = "Get the simplified path of a bus", description = "Returns the recorded path of a bus within a time window as an encoded polyline, simplified with Douglas-Peucker to the given tolerance in meters. The path is capped at a fixed number of points; longer paths are simplified further and the applied tolerance is returned")
+    public ResponseEntity<TrajectoryDTO> getBusTrajectory(
+            @PathVariable Integer id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Double tolerance) {
+        
+        if (!from.isBefore(to) || (tolerance != null && (!Double.isFinite(tolerance) || tolerance < 0))) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        double toleranceMeters = tolerance != null ? tolerance : defaultTrajectoryToleranceMeters;
+        return ResponseEntity.ok(busPositionHistoryService.findTrajectory(id, from, to, toleranceMeters));
     }
     
     @PostMapping
@@ -142,7 +574,7 @@ public class BusController {
             
             bus.setSpeed(busDTO.getSpeed());
             bus.setLicensePlate(busDTO.getLicensePlate());
-            bus.setTime(busDTO.getTime() != null ? busDTO.getTime() : LocalDateTime.now());
+            bus.setTime(busDTO.getTime() != null ? busDTO.getTime() : soapUtils.now());
             bus.setRecordTime(bus.getTime());
             bus.setLastUpdated(LocalDateTime.now());
             
@@ -155,6 +587,7 @@ public class BusController {
             }
             
             Bus savedBus = busRepository.save(bus);
+            busSoapService.reloadFleetSnapshot();
             return new ResponseEntity<>(convertToDTO(savedBus), HttpStatus.CREATED);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -197,6 +630,7 @@ public class BusController {
                 bus.setLastUpdated(LocalDateTime.now());
                 
                 Bus updatedBus = busRepository.save(bus);
+                busSoapService.reloadFleetSnapshot();
                 
                 return ResponseEntity.ok(convertToDTO(updatedBus));
             } else {
@@ -212,45 +646,11 @@ public class BusController {
             return;
         }
         
-        List<Garage> garages = garageRepository.findAll();
-        if (garages.isEmpty()) {
-            return;
-        }
-        
-        double minDistance = Double.MAX_VALUE;
-        Garage nearestGarage = null;
-        
-        for (Garage garage : garages) {
-            if (garage.getCoordinate() == null) {
-                continue;
-            }
-            
-            String[] coordinates = garage.getCoordinate().split(",");
-            if (coordinates.length != 2) {
-                continue;
-            }
-            
-            try {
-                double garageLat = Double.parseDouble(coordinates[0]);
-                double garageLon = Double.parseDouble(coordinates[1]);
-                
-                double distance = soapUtils.calculateDistance(
-                    bus.getLatitude(), bus.getLongitude(), garageLat, garageLon);
-                
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    nearestGarage = garage;
-                }
-            } catch (NumberFormatException e) {
-                continue;
-            }
-        }
-        
-        if (nearestGarage != null) {
-            bus.setNearestGarageCode(nearestGarage.getGarageCode());
-            bus.setNearestGarageName(nearestGarage.getGarageName());
-            bus.setDistanceToNearestGarage(minDistance);
-        }
+        garageLocator.nearest(bus.getLatitude(), bus.getLongitude()).ifPresent(nearest -> {
+            bus.setNearestGarageCode(nearest.getGarage().getGarageCode());
+            bus.setNearestGarageName(nearest.getGarage().getGarageName());
+            bus.setDistanceToNearestGarage(nearest.getDistance());
+        });
     }
     
     @DeleteMapping("/{id}")
@@ -259,6 +659,7 @@ public class BusController {
         try {
             if (busRepository.existsById(id)) {
                 busRepository.deleteById(id);
+                busSoapService.reloadFleetSnapshot();
                 return ResponseEntity.noContent().build();
             } else {
                 return ResponseEntity.notFound().build();
@@ -271,27 +672,85 @@ public class BusController {
     @GetMapping("/refresh")
     @Operation(summary = "Force refresh of bus data", description = "Forces a refresh of bus data from the SOAP service")
     public ResponseEntity<List<BusDTO>> refreshBusData() {
-        List<Bus> buses = busSoapService.getBusData();
-        List<BusDTO> busDTOs = buses.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        FleetSnapshot snapshot = busSoapService.forceRefresh();
+        List<BusDTO> busDTOs = convertToDTOs(snapshot, IntStream.range(0, snapshot.size()).toArray());
         return ResponseEntity.ok(busDTOs);
     }
 
 
-    private BusDTO convertToDTO(Bus bus) {
-        return BusDTO.builder()
-                .doorNo(bus.getDoorNo())
-                .operator(bus.getOperator())
-                .garage(bus.getGarageCode())
-                .latitude(bus.getLatitude())
-                .longitude(bus.getLongitude())
-                .speed(bus.getSpeed())
-                .licensePlate(bus.getLicensePlate())
-                .time(bus.getTime() != null ? bus.getTime() : bus.getRecordTime())
-                .nearestGarageCode(bus.getNearestGarageCode())
-                .nearestGarageName(bus.getNearestGarageName())
-                .distanceToNearestGarage(bus.getDistanceToNearestGarage())
+    private <T> ResponseEntity<T> ok(String etag, T body) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body);
+    }
+    
+    private <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(cacheControl())
+                .varyBy(HttpHeaders.ACCEPT)
                 .build();
     }
+    
+    private ResponseEntity<StreamingResponseBody> export(String etag, String fileName, ExportFormat format, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl())
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(new MediaType(MediaType.parseMediaType(format.getMediaType()), StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName + "." + format.getExtension())
+                        .build()
+                        .toString())
+                .body(body);
+    }
+    
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic().mustRevalidate();
+    }
+    
+    private BusDTO convertToDTO(Bus bus) {
+        return BusDTO.fromBus(bus);
+    }
+    
+    private List<BusDTO> convertToDTOs(FleetSnapshot snapshot, int[] rows) {
+        List<BusDTO> busDTOs = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            busDTOs.add(BusDTO.fromRow(snapshot.getColumns(), row));
+        }
+        return busDTOs;
+    }
+    
+    private List<VehicleStateDTO> convertToDTOs(VehicleStates states, int[] rows) {
+        List<VehicleStateDTO> stateDTOs = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            stateDTOs.add(VehicleStateDTO.builder()
+                    .bus(BusDTO.fromRow(states.getSnapshot().getColumns(), row))
+                    .lastFixTime(states.lastFixTime(row))
+                    .lastMovementTime(states.lastMovementTime(row))
+                    .stoppedSince(states.stoppedSince(row))
+                    .zeroSpeedSamples(states.zeroSpeedSamples(row))
+                    .build());
+        }
+        return stateDTOs;
+    }
+    
+    private Map<String, FleetAggregateDTO> convertToDTOs(Map<String, FleetStats.Aggregate> aggregates) {
+        Map<String, FleetAggregateDTO> aggregateDTOs = new LinkedHashMap<>();
+        aggregates.forEach((garageCode, aggregate) -> aggregateDTOs.put(garageCode, FleetAggregateDTO.from(aggregate)));
+        return aggregateDTOs;
+    }
+    
+    private List<BusDTO> convertToDTOs(FleetSnapshot snapshot, List<Integer> ids) {
+        List<BusDTO> busDTOs = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            int row = snapshot.rowOf(id);
+            if (row >= 0) {
+                busDTOs.add(BusDTO.fromRow(snapshot.getColumns(), row));
+            }
+        }
+        return busDTOs;
+    }
 } 
\ No newline at end of file
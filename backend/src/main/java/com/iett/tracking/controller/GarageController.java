@@ -1,116 +1,219 @@
 package com.iett.tracking.controller;
 
+import com.iett.tracking.config.WebConfig;
+import com.iett.tracking.dto.CursorPageDTO;
+import com.iett.tracking.dto.FleetAggregateDTO;
 import com.iett.tracking.dto.GarageDTO;
+import com.iett.tracking.dto.GarageStatsDTO;
 import com.iett.tracking.dto.SearchResponseDTO;
+import com.iett.tracking.export.ExportFormat;
+import com.iett.tracking.export.FleetExporter;
+import com.iett.tracking.fleet.FleetSnapshot;
+import com.iett.tracking.fleet.FleetStats;
+import com.iett.tracking.geo.GarageLocator;
 import com.iett.tracking.model.Garage;
 import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.service.BusSoapService;
 import com.iett.tracking.service.GarageSoapService;
+import com.iett.tracking.util.EntityTag;
+import com.iett.tracking.util.PageCursor;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
-@RequestMapping("/api/garages")
+@RequestMapping(value = "/api/garages", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, WebConfig.APPLICATION_SMILE_VALUE})
 @Tag(name = "Garage", description = "Garage management APIs")
 public class GarageController {
 
+    private static final String DATASET = "garages";
+
     private final GarageRepository garageRepository;
     private final GarageSoapService garageSoapService;
+    private final GarageLocator garageLocator;
+    private final BusSoapService busSoapService;
+    private final FleetExporter fleetExporter;
+
+    @Value("${iett.http.garage-max-age-seconds}")
+    private long maxAgeSeconds;
+
+    @Value("${iett.http.bus-max-age-seconds}")
+    private long busMaxAgeSeconds;
 
     @Autowired
-    public GarageController(GarageRepository garageRepository, GarageSoapService garageSoapService) {
+    public GarageController(GarageRepository garageRepository, GarageSoapService garageSoapService, GarageLocator garageLocator,
+                            BusSoapService busSoapService, FleetExporter fleetExporter) {
         this.garageRepository = garageRepository;
         this.garageSoapService = garageSoapService;
+        this.garageLocator = garageLocator;
+        this.busSoapService = busSoapService;
+        this.fleetExporter = fleetExporter;
     }
 
     @GetMapping
     @Operation(summary = "Get a paginated list of garages", description = "Returns up to 20 garages per page from the database")
     public ResponseEntity<List<GarageDTO>> getAllGarages(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
-        if (size > 20) {
-            size = 20;
-        }
+        garageSoapService.recordRead();
+        int pageSize = Math.max(1, Math.min(size, 20));
+        // Garages are not replaced while the page is read, so the rows match the version in the tag
+        return garageLocator.read(version -> getPage(version, page, pageSize, WebConfig.negotiate(accept), ifNoneMatch));
+    }
+    
+    @GetMapping("/cursor")
+    @Operation(summary = "Page through garages with a cursor", description = "Returns up to 200 garages ordered by ID. Pass the returned nextCursor to get the next page. Returns 410 when garage data changed since the first page and paging must restart")
+    public ResponseEntity<CursorPageDTO<GarageDTO>> getGaragesByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
-        // First, ensure we have up-to-date data from SOAP service if needed
-        garageSoapService.getGarageData();
+        garageSoapService.recordRead();
+        int pageSize = Math.max(1, Math.min(size, 200));
+        // Garages are not replaced while the page is read, so the rows all belong to the cursor's version
+        return garageLocator.read(version -> getCursorPage(version, cursor, pageSize, WebConfig.negotiate(accept), ifNoneMatch));
+    }
+    
+    @GetMapping(value = "/export", produces = {ExportFormat.NDJSON_VALUE, ExportFormat.CSV_VALUE})
+    @Operation(summary = "Export all garages", description = "Streams every garage in the database, ordered by ID, as NDJSON (format=ndjson, the default) or CSV (format=csv), without paging. Send Accept-Encoding: gzip for a compressed download")
+    public ResponseEntity<StreamingResponseBody> exportGarages(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
-        Pageable pageable = PageRequest.of(page, size, Sort.by("id").ascending());
-        Page<Garage> garagePage = garageRepository.findAll(pageable);
+        garageSoapService.recordRead();
         
-        List<GarageDTO> garageDTOs = garagePage.getContent().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-                
-        return ResponseEntity.ok(garageDTOs);
+        Optional<ExportFormat> exportFormat = ExportFormat.of(format);
+        if (exportFormat.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        long version = garageLocator.getVersion();
+        String etag = EntityTag.of(DATASET, version, MediaType.parseMediaType(exportFormat.get().getMediaType()), "export");
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        return export(etag, "garages-" + version, exportFormat.get(),
+                out -> fleetExporter.writeGarages(exportFormat.get(), out));
     }
     
     @GetMapping("/{id}")
     @Operation(summary = "Get a garage by ID", description = "Returns a garage by its ID")
-    public ResponseEntity<GarageDTO> getGarageById(@PathVariable Long id) {
-        // First, ensure we have up-to-date data from SOAP service if needed
-        garageSoapService.getGarageData();
+    public ResponseEntity<GarageDTO> getGarageById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        garageSoapService.recordRead();
+        String etag = EntityTag.of(DATASET, garageLocator.getVersion(), WebConfig.negotiate(accept), "id", id);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         
         Optional<Garage> garageOpt = garageRepository.findById(id);
         
         if (garageOpt.isPresent()) {
-            return ResponseEntity.ok(convertToDTO(garageOpt.get()));
+            return ok(etag, convertToDTO(garageOpt.get()));
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
+    @GetMapping("/{id}/stats")
+    @Operation(summary = "Get bus statistics of a garage", description = "Returns the count, stationary count, mean and max speed and distance-to-nearest-garage percentiles of the buses assigned to the garage and of the buses currently nearest to it. Precomputed for every fleet snapshot")
+    public ResponseEntity<GarageStatsDTO> getGarageStats(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        garageSoapService.recordRead();
+        // Changes with the buses as well as the garages, so it is cached as briefly as bus reads
+        FleetSnapshot snapshot = busSoapService.getFleetSnapshot();
+        String etag = EntityTag.of(DATASET, garageLocator.getVersion(), WebConfig.negotiate(accept), "stats", id, snapshot.getVersion());
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag, fleetCacheControl());
+        }
+        
+        // Resolved from the garage index so the precomputed statistics are served without a query
+        Optional<Garage> garageOpt = garageLocator.findById(id);
+        if (garageOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        Garage garage = garageOpt.get();
+        FleetStats stats = snapshot.getStats();
+        GarageStatsDTO response = GarageStatsDTO.builder()
+                .garageId(garage.getId())
+                .garageCode(garage.getGarageCode())
+                .garageName(garage.getGarageName())
+                .version(snapshot.getVersion())
+                .assigned(FleetAggregateDTO.from(stats.assignedTo(garage.getGarageCode())))
+                .nearest(FleetAggregateDTO.from(stats.nearestTo(garage.getGarageCode())))
+                .build();
+        
+        return ok(etag, response, fleetCacheControl());
+    }
+
     @GetMapping("/search")
     @Operation(summary = "Search garages", description = "Search garages by ID, name, or code (max 20 results)")
     public ResponseEntity<SearchResponseDTO<GarageDTO>> searchGarages(
             @RequestParam String term,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        garageSoapService.recordRead();
         
         if (size > 20) {
             size = 20;
         }
         
-        // First, ensure we have up-to-date data from SOAP service if needed
-        garageSoapService.getGarageData();
-        
-        List<Garage> garages = garageRepository.findBySearchTerm(term);
-        
-        int start = page * size;
-        int end = Math.min(start + size, garages.size());
+        String etag = EntityTag.of(DATASET, garageLocator.getVersion(), WebConfig.negotiate(accept), "search", term, page, size);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         
-        List<Garage> paginatedGarages = (start < end) 
-            ? garages.subList(start, end) 
-            : List.of();
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.max(size, 1), Sort.by("id").ascending());
+        Page<Garage> garagePage = garageRepository.findBySearchTerm(term, parseId(term), pageable);
         
-        List<GarageDTO> garageDTOs = paginatedGarages.stream()
+        List<GarageDTO> garageDTOs = garagePage.getContent().stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
         
         SearchResponseDTO<GarageDTO> response = SearchResponseDTO.<GarageDTO>builder()
                 .results(garageDTOs)
                 .count(garageDTOs.size())
-                .totalCount(garages.size())
+                .totalCount((int) garagePage.getTotalElements())
                 .page(page)
                 .size(size)
                 .searchTerm(term)
                 .hasMatches(!garageDTOs.isEmpty())
                 .build();
         
-        return ResponseEntity.ok(response);
+        return ok(etag, response);
     }
     
     @PostMapping
@@ -123,7 +226,11 @@ public class GarageController {
             garage.setCoordinate(garageDTO.getCoordinate());
             garage.setLastUpdated(LocalDateTime.now());
             
-            Garage savedGarage = garageRepository.save(garage);
+            Garage savedGarage = garageLocator.change(() -> {
+                Garage saved = garageRepository.save(garage);
+                garageLocator.reload();
+                return saved;
+            });
             
             return new ResponseEntity<>(convertToDTO(savedGarage), HttpStatus.CREATED);
         } catch (Exception e) {
@@ -144,7 +251,11 @@ public class GarageController {
                 garage.setCoordinate(garageDTO.getCoordinate());
                 garage.setLastUpdated(LocalDateTime.now());
                 
-                Garage updatedGarage = garageRepository.save(garage);
+                Garage updatedGarage = garageLocator.change(() -> {
+                    Garage saved = garageRepository.save(garage);
+                    garageLocator.reload();
+                    return saved;
+                });
                 
                 return ResponseEntity.ok(convertToDTO(updatedGarage));
             } else {
@@ -160,7 +271,10 @@ public class GarageController {
     public ResponseEntity<Void> deleteGarage(@PathVariable Long id) {
         try {
             if (garageRepository.existsById(id)) {
-                garageRepository.deleteById(id);
+                garageLocator.change(() -> {
+                    garageRepository.deleteById(id);
+                    return garageLocator.reload();
+                });
                 return ResponseEntity.noContent().build();
             } else {
                 return ResponseEntity.notFound().build();
@@ -178,14 +292,128 @@ public class GarageController {
     @GetMapping("/refresh")
     @Operation(summary = "Force refresh of garage data", description = "Forces a refresh of garage data from the SOAP service")
     public ResponseEntity<List<GarageDTO>> refreshGarageData() {
-        // This will force a refresh of the data
-        List<Garage> garages = garageSoapService.getGarageData();
+        List<Garage> garages = garageSoapService.forceRefresh();
         List<GarageDTO> garageDTOs = garages.stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(garageDTOs);
     }
 
+    /**
+     * Garage ids are matched exactly rather than as text, so the primary key index can be used
+     */
+    private Long parseId(String term) {
+        try {
+            return Long.parseLong(term.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private ResponseEntity<List<GarageDTO>> getPage(long version, int page, int size, MediaType mediaType, String ifNoneMatch) {
+        String etag = EntityTag.of(DATASET, version, mediaType, "page", page, size);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        Pageable pageable = PageRequest.of(page, size, Sort.by("id").ascending());
+        Page<Garage> garagePage = garageRepository.findAll(pageable);
+        
+        List<GarageDTO> garageDTOs = garagePage.getContent().stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+                
+        return ok(etag, garageDTOs);
+    }
+    
+    private ResponseEntity<CursorPageDTO<GarageDTO>> getCursorPage(long version, String cursor, int size, MediaType mediaType, String ifNoneMatch) {
+        long afterId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            PageCursor pageCursor;
+            try {
+                pageCursor = PageCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            
+            if (pageCursor.getVersion() != version) {
+                return ResponseEntity.status(HttpStatus.GONE).build();
+            }
+            afterId = pageCursor.getLastKey();
+        }
+        
+        String etag = EntityTag.of(DATASET, version, mediaType, "cursor", afterId, size);
+        if (EntityTag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        // Keyset seek on the primary key; one extra row tells whether another page follows
+        Pageable pageable = PageRequest.of(0, size + 1, Sort.by("id").ascending());
+        List<Garage> garages = garageRepository.findByIdGreaterThan(afterId, pageable);
+        
+        boolean hasMore = garages.size() > size;
+        List<Garage> pageGarages = hasMore ? garages.subList(0, size) : garages;
+        
+        List<GarageDTO> garageDTOs = pageGarages.stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+        
+        CursorPageDTO<GarageDTO> response = CursorPageDTO.<GarageDTO>builder()
+                .results(garageDTOs)
+                .count(garageDTOs.size())
+                .version(version)
+                .nextCursor(hasMore ? new PageCursor(version, pageGarages.get(pageGarages.size() - 1).getId()).encode() : null)
+                .hasMore(hasMore)
+                .build();
+        
+        return ok(etag, response);
+    }
+    
+    private <T> ResponseEntity<T> ok(String etag, T body) {
+        return ok(etag, body, cacheControl());
+    }
+    
+    private <T> ResponseEntity<T> ok(String etag, T body, CacheControl cacheControl) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body);
+    }
+
+    private <T> ResponseEntity<T> notModified(String etag) {
+        return notModified(etag, cacheControl());
+    }
+    
+    private <T> ResponseEntity<T> notModified(String etag, CacheControl cacheControl) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .build();
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(String etag, String fileName, ExportFormat format, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl())
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(new MediaType(MediaType.parseMediaType(format.getMediaType()), StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName + "." + format.getExtension())
+                        .build()
+                        .toString())
+                .body(body);
+    }
+    
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic().mustRevalidate();
+    }
+
+    private CacheControl fleetCacheControl() {
+        return CacheControl.maxAge(busMaxAgeSeconds, TimeUnit.SECONDS).cachePublic().mustRevalidate();
+    }
+    
     private GarageDTO convertToDTO(Garage garage) {
         return GarageDTO.builder()
                 .id(garage.getId())
@@ -1,5 +1,8 @@
 package com.iett.tracking.controller;
 
+import com.iett.tracking.service.SoapTransport;
+import com.iett.tracking.stream.FleetStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -12,6 +15,15 @@ import java.util.Map;
 @RequestMapping("/api/health")
 public class HealthController {
 
+    private final SoapTransport soapTransport;
+    private final FleetStreamService fleetStreamService;
+
+    @Autowired
+    public HealthController(SoapTransport soapTransport, FleetStreamService fleetStreamService) {
+        this.soapTransport = soapTransport;
+        this.fleetStreamService = fleetStreamService;
+    }
+
     @GetMapping
     public ResponseEntity<Map<String, String>> healthCheck() {
         Map<String, String> response = new HashMap<>();
@@ -19,4 +31,17 @@ public class HealthController {
         response.put("message", "IETT Tracking System Backend is running");
         return ResponseEntity.ok(response);
     }
-} 
\ No newline at end of file
+
+    @GetMapping("/soap")
+    public ResponseEntity<Map<String, Object>> soapTransportStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("endpoints", soapTransport.getEndpointStats());
+        response.put("connectionPool", soapTransport.getPoolStats());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<Map<String, Object>> fleetStreamStats() {
+        return ResponseEntity.ok(fleetStreamService.getStats());
+    }
+}
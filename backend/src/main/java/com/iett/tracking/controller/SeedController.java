@@ -1,9 +1,11 @@
 package com.iett.tracking.controller;
 
+import com.iett.tracking.geo.GarageLocator;
 import com.iett.tracking.model.Bus;
 import com.iett.tracking.model.Garage;
 import com.iett.tracking.repository.BusRepository;
 import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.service.BusSoapService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,11 +28,15 @@ public class SeedController {
 
     private final GarageRepository garageRepository;
     private final BusRepository busRepository;
+    private final BusSoapService busSoapService;
+    private final GarageLocator garageLocator;
 
     @Autowired
-    public SeedController(GarageRepository garageRepository, BusRepository busRepository) {
+    public SeedController(GarageRepository garageRepository, BusRepository busRepository, BusSoapService busSoapService, GarageLocator garageLocator) {
         this.garageRepository = garageRepository;
         this.busRepository = busRepository;
+        this.busSoapService = busSoapService;
+        this.garageLocator = garageLocator;
     }
 
     @PostMapping
@@ -41,9 +47,11 @@ public class SeedController {
         
         List<Garage> garages = createDummyGarages();
         garageRepository.saveAll(garages);
+        garageLocator.reload();
         
         List<Bus> buses = createDummyBuses(garages);
         busRepository.saveAll(buses);
+        busSoapService.reloadFleetSnapshot();
         
         Map<String, Object> response = new HashMap<>();
         response.put("garages", garages.size());
@@ -0,0 +1,21 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A map cluster: the centroid and number of its buses. A cluster of one bus carries that bus,
+ * so the map can draw it as a regular marker.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BusClusterDTO {
+    private double latitude;
+    private double longitude;
+    private int count;
+    private BusDTO bus;
+}
@@ -0,0 +1,26 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The clusters of one map viewport. {@code zoom} is the cluster level that was used, which is
+ * capped at the finest precomputed level; {@code busCount} is the sum of the cluster counts.
+ * {@code truncated} is set when the viewport has more clusters than were returned; {@code busCount}
+ * still covers all of them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BusClustersDTO {
+    private long version;
+    private int zoom;
+    private int busCount;
+    private boolean truncated;
+    private List<BusClusterDTO> clusters;
+}
@@ -1,5 +1,8 @@
 package com.iett.tracking.dto;
 
+import com.iett.tracking.fleet.FleetColumns;
+import com.iett.tracking.fleet.FleetSnapshot;
+import com.iett.tracking.model.Bus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -7,11 +10,17 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
+/**
+ * API view of a bus. {@code time} is the time of the vehicle's last real position fix and is null
+ * when it never sent one; {@code lastUpdated} is when the ingested record last changed, so the two
+ * tell a vehicle that reports from one that is only still listed.
+ */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class BusDTO {
+    private Integer id;
     private String doorNo;
     private String operator;
     private String garage;
@@ -20,8 +29,56 @@ public class BusDTO {
     private Double speed;
     private String licensePlate;
     private LocalDateTime time;
+    private LocalDateTime lastUpdated;
     
     private String nearestGarageCode;
     private String nearestGarageName;
     private Double distanceToNearestGarage;
+
+    /**
+     * Build the API view of a bus
+     * @param bus The bus entity
+     * @return The DTO
+     */
+    public static BusDTO fromBus(Bus bus) {
+        return BusDTO.builder()
+                .id(bus.getId())
+                .doorNo(FleetSnapshot.doorNumberOf(bus))
+                .operator(bus.getOperator())
+                .garage(bus.getGarageCode())
+                .latitude(bus.getLatitude())
+                .longitude(bus.getLongitude())
+                .speed(bus.getSpeed())
+                .licensePlate(bus.getLicensePlate())
+                .time(bus.getTime())
+                .lastUpdated(bus.getLastUpdated())
+                .nearestGarageCode(bus.getNearestGarageCode())
+                .nearestGarageName(bus.getNearestGarageName())
+                .distanceToNearestGarage(bus.getDistanceToNearestGarage())
+                .build();
+    }
+
+    /**
+     * Build the API view of a bus straight from the fleet columns
+     * @param columns The fleet columns
+     * @param row The row of the bus
+     * @return The DTO
+     */
+    public static BusDTO fromRow(FleetColumns columns, int row) {
+        return BusDTO.builder()
+                .id(columns.id(row))
+                .doorNo(columns.doorNumber(row))
+                .operator(columns.operator(row))
+                .garage(columns.garageCode(row))
+                .latitude(columns.latitudeOrNull(row))
+                .longitude(columns.longitudeOrNull(row))
+                .speed(columns.speedOrNull(row))
+                .licensePlate(columns.licensePlate(row))
+                .time(columns.time(row))
+                .lastUpdated(columns.lastUpdated(row))
+                .nearestGarageCode(columns.nearestGarageCode(row))
+                .nearestGarageName(columns.nearestGarageName(row))
+                .distanceToNearestGarage(columns.nearestGarageDistanceOrNull(row))
+                .build();
+    }
 } 
\ No newline at end of file
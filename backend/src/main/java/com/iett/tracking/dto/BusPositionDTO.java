@@ -0,0 +1,21 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BusPositionDTO {
+    private Integer busId;
+    private String doorNo;
+    private Double latitude;
+    private Double longitude;
+    private Double speed;
+    private LocalDateTime recordTime;
+}
@@ -0,0 +1,20 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+    private List<T> results;
+    private int count;
+    private long version;
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,42 @@
+package com.iett.tracking.dto;
+
+import com.iett.tracking.fleet.FleetStats;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Counts, speeds (km/h) and distances to the nearest garage of a group of buses.
+ * Speed and distance figures are null when no bus of the group reports them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FleetAggregateDTO {
+    private int count;
+    private int stationaryCount;
+    private Double meanSpeed;
+    private Double maxSpeed;
+    private Double distanceP50Km;
+    private Double distanceP90Km;
+    private Double distanceP99Km;
+
+    /**
+     * Build the API view of an aggregate
+     * @param aggregate The aggregate
+     * @return The DTO
+     */
+    public static FleetAggregateDTO from(FleetStats.Aggregate aggregate) {
+        return FleetAggregateDTO.builder()
+                .count(aggregate.getCount())
+                .stationaryCount(aggregate.getStationaryCount())
+                .meanSpeed(aggregate.getMeanSpeed())
+                .maxSpeed(aggregate.getMaxSpeed())
+                .distanceP50Km(aggregate.getDistanceP50Km())
+                .distanceP90Km(aggregate.getDistanceP90Km())
+                .distanceP99Km(aggregate.getDistanceP99Km())
+                .build();
+    }
+}
@@ -0,0 +1,28 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Changes to the fleet between the client's version and the current one.
+ * When {@code full} is true the client was too far behind: {@code added} then holds
+ * the whole fleet and the client should drop everything it had before applying it.
+ * {@code moved} only holds buses whose position changed; other fields of a bus are brought
+ * up to date the next time it moves.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FleetChangesDTO {
+    private long fromVersion;
+    private long version;
+    private boolean full;
+    private List<BusDTO> added;
+    private List<BusDTO> moved;
+    private List<Integer> removed;
+}
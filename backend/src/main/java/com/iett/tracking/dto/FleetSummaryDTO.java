@@ -0,0 +1,24 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Aggregates of the whole fleet and of every garage, keyed by garage code, as of one fleet snapshot
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FleetSummaryDTO {
+    private long version;
+    private LocalDateTime createdAt;
+    private FleetAggregateDTO fleet;
+    private Map<String, FleetAggregateDTO> assignedByGarage;
+    private Map<String, FleetAggregateDTO> nearestByGarage;
+}
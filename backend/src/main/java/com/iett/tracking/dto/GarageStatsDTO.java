@@ -0,0 +1,22 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Buses assigned to a garage and buses currently nearest to it, as of one fleet snapshot
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GarageStatsDTO {
+    private Long garageId;
+    private String garageCode;
+    private String garageName;
+    private long version;
+    private FleetAggregateDTO assigned;
+    private FleetAggregateDTO nearest;
+}
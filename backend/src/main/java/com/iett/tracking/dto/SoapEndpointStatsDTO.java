@@ -0,0 +1,19 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SoapEndpointStatsDTO {
+    private String endpoint;
+    private long requests;
+    private long failures;
+    private long records;
+    private double averageMillis;
+    private long maxMillis;
+}
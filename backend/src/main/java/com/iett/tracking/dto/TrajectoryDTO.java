@@ -0,0 +1,31 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Simplified path of a bus over a time window, as an encoded polyline (precision 5).
+ * {@code toleranceMeters} is the simplification actually applied, which is larger than requested
+ * when the path had to be cut down to the point limit; {@code truncated} means the window held
+ * more recorded positions than are read and the path ends early.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrajectoryDTO {
+    private Integer busId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private String polyline;
+    private int pointCount;
+    private int sourcePointCount;
+    private double toleranceMeters;
+    private boolean truncated;
+}
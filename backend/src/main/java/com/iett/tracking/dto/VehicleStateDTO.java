@@ -0,0 +1,24 @@
+package com.iett.tracking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A bus with the state tracked for it across refreshes: its last real fix, when it was last
+ * seen moving and since when it has been stationary
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VehicleStateDTO {
+    private BusDTO bus;
+    private LocalDateTime lastFixTime;
+    private LocalDateTime lastMovementTime;
+    private LocalDateTime stoppedSince;
+    private int zeroSpeedSamples;
+}
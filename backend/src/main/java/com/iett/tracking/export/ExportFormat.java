@@ -0,0 +1,49 @@
+package com.iett.tracking.export;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Formats of the bulk export endpoints
+ */
+public enum ExportFormat {
+
+    /** One JSON object per line, in the same shape as the JSON API */
+    NDJSON(ExportFormat.NDJSON_VALUE, "ndjson"),
+
+    /** Comma-separated values with a header row */
+    CSV(ExportFormat.CSV_VALUE, "csv");
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private final String mediaType;
+    private final String extension;
+
+    ExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Parse the {@code format} request parameter
+     * @param value The parameter, e.g. "csv"; case is ignored
+     * @return The format, or empty if the value names none
+     */
+    public static Optional<ExportFormat> of(String value) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equals(value.toLowerCase(Locale.ROOT))) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,133 @@
+package com.iett.tracking.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.iett.tracking.dto.BusDTO;
+import com.iett.tracking.dto.GarageDTO;
+import com.iett.tracking.fleet.FleetColumns;
+import com.iett.tracking.fleet.FleetSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes whole data sets as NDJSON or CSV, one row at a time. Buses are read from the columns of
+ * a fleet snapshot and garages from a database cursor, so memory use does not grow with the size
+ * of the export; the response buffer is flushed to the client as it fills.
+ */
+@Service
+@Slf4j
+public class FleetExporter {
+
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int fetchSize;
+
+    public FleetExporter(
+            ObjectMapper objectMapper,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${iett.export.fetch-size}") int fetchSize) {
+        this.objectMapper = objectMapper;
+        // CSV columns follow the field order of the DTOs, like the JSON objects, and cells hold
+        // ISO-8601 times rather than the [year, month, ...] arrays of the JSON API
+        this.csvMapper = CsvMapper.builder()
+                .disable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                .addModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        this.jdbcTemplate = jdbcTemplate;
+        // PostgreSQL only streams a result set through a cursor inside a transaction
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Write every bus of a snapshot, in door number order like the snapshot rows
+     * @param snapshot The snapshot to export
+     * @param format The output format
+     * @param out The response body; left open
+     * @throws IOException If the client goes away
+     */
+    public void writeBuses(FleetSnapshot snapshot, ExportFormat format, OutputStream out) throws IOException {
+        FleetColumns columns = snapshot.getColumns();
+        try (SequenceWriter writer = open(format, BusDTO.class, out)) {
+            for (int row = 0; row < columns.size(); row++) {
+                writer.write(BusDTO.fromRow(columns, row));
+            }
+        }
+        finish(format, columns.size(), out);
+        log.debug("Exported {} buses of snapshot v{} as {}", columns.size(), snapshot.getVersion(), format);
+    }
+
+    /**
+     * Write every garage in the database, in id order
+     * @param format The output format
+     * @param out The response body; left open
+     * @throws IOException If the client goes away
+     */
+    public void writeGarages(ExportFormat format, OutputStream out) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        try (SequenceWriter writer = open(format, GarageDTO.class, out)) {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "SELECT id, garage_name, garage_code, coordinate FROM garages ORDER BY id");
+                ps.setFetchSize(fetchSize);
+                return ps;
+            }, rs -> {
+                GarageDTO garage = GarageDTO.builder()
+                        .id(rs.getLong("id"))
+                        .garageName(rs.getString("garage_name"))
+                        .garageCode(rs.getString("garage_code"))
+                        .coordinate(rs.getString("coordinate"))
+                        .build();
+                try {
+                    writer.write(garage);
+                    count.incrementAndGet();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finish(format, count.get(), out);
+        log.debug("Exported {} garages as {}", count.get(), format);
+    }
+
+    private SequenceWriter open(ExportFormat format, Class<?> type, OutputStream out) throws IOException {
+        ObjectWriter writer = format == ExportFormat.CSV
+                ? csvMapper.writer(csvMapper.schemaFor(type).withHeader())
+                : objectMapper.writer().withRootValueSeparator("\n");
+        // Let the response buffer decide when to flush, and leave closing the body to the container
+        return writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValues(out);
+    }
+
+    private static void finish(ExportFormat format, int count, OutputStream out) throws IOException {
+        // The separator only goes between values; NDJSON ends every line, including the last
+        if (format == ExportFormat.NDJSON && count > 0) {
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,242 @@
+package com.iett.tracking.fleet;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable trigram index over the operator, garage code, door number and license plate of
+ * the buses in a snapshot. Text is folded so that Turkish İ/I/ı/i all match each other and
+ * case is ignored. Candidates come from intersecting the posting lists of the term's trigrams
+ * and are then checked with a plain substring test, so results are exactly those of a
+ * case-insensitive "contains" search.
+ * <p>
+ * Folded text and trigrams are kept per row; when a new snapshot is built, buses whose
+ * searchable fields did not change since the previous snapshot reuse them and only the
+ * posting lists are rebuilt.
+ */
+public final class BusSearchIndex {
+
+    private final Document[] documents;
+    private final Map<Long, int[]> postings;
+
+    private BusSearchIndex(FleetColumns columns, FleetSnapshot previous) {
+        this.documents = new Document[columns.size()];
+
+        BusSearchIndex previousIndex = previous != null ? previous.searchIndex() : null;
+        FleetColumns previousColumns = previous != null ? previous.getColumns() : null;
+
+        Map<Long, IntList> lists = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            int previousRow = previousIndex != null ? previous.rowOf(columns.id(i)) : -1;
+            Document document = previousRow >= 0 && sameFields(columns, i, previousColumns, previousRow)
+                    ? previousIndex.documents[previousRow]
+                    : Document.of(columns, i);
+            documents[i] = document;
+            for (long trigram : document.trigrams) {
+                lists.computeIfAbsent(trigram, key -> new IntList()).add(i);
+            }
+        }
+
+        this.postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Long, IntList> entry : lists.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Build an index over the rows of a fleet
+     * @param columns The fleet; results are rows of these columns
+     * @param previous The previous snapshot to reuse unchanged buses from, or null
+     * @return The index
+     */
+    public static BusSearchIndex build(FleetColumns columns, FleetSnapshot previous) {
+        return new BusSearchIndex(columns, previous);
+    }
+
+    /**
+     * Both columns share one dictionary, so equal codes mean equal operators and garage codes
+     */
+    private static boolean sameFields(FleetColumns columns, int row, FleetColumns previousColumns, int previousRow) {
+        return columns.operatorKey(row) == previousColumns.operatorKey(previousRow)
+                && columns.garageCodeKey(row) == previousColumns.garageCodeKey(previousRow)
+                && Objects.equals(columns.doorNumber(row), previousColumns.doorNumber(previousRow))
+                && Objects.equals(columns.licensePlate(row), previousColumns.licensePlate(previousRow));
+    }
+
+    /**
+     * Fold text for matching: lower case, with the Turkish dotted and dotless i collapsed into 'i'
+     * @param text The text
+     * @return The folded text, or null if the text is null
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == 'I' || c == 'İ' || c == 'ı') {
+                folded.append('i');
+            } else {
+                folded.append(Character.toLowerCase(c));
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Find one page of buses whose operator, garage code, door number or license plate contains the term
+     * @param term The search term
+     * @param page Zero-based page index
+     * @param size Page size
+     * @return Rows of the requested page and the total number of matches
+     */
+    public SearchPage search(String term, int page, int size) {
+        String needle = fold(term);
+        long skip = (long) Math.max(page, 0) * Math.max(size, 0);
+        IntList results = new IntList();
+        int total = 0;
+
+        if (needle.isEmpty()) {
+            total = documents.length;
+            for (long i = skip; i < documents.length && results.size < size; i++) {
+                results.add((int) i);
+            }
+            return new SearchPage(results.toArray(), total);
+        }
+
+        int[] candidates = candidates(needle);
+        int count = candidates != null ? candidates.length : documents.length;
+        for (int c = 0; c < count; c++) {
+            int i = candidates != null ? candidates[c] : c;
+            if (!documents[i].contains(needle)) {
+                continue;
+            }
+            if (total >= skip && results.size < size) {
+                results.add(i);
+            }
+            total++;
+        }
+        return new SearchPage(results.toArray(), total);
+    }
+
+    /**
+     * Rows of every bus that contains all trigrams of the needle, ascending,
+     * or null when the needle is too short to have trigrams and every bus has to be checked
+     */
+    private int[] candidates(String needle) {
+        if (needle.length() < 3) {
+            return null;
+        }
+        List<int[]> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            int[] list = postings.get(trigram(needle, i));
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists.get(0);
+        for (int l = 1; l < lists.size() && result.length > 0; l++) {
+            result = intersect(result, lists.get(l));
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static long trigram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    @Getter
+    public static final class SearchPage {
+        private final int[] rows;
+        private final int totalCount;
+
+        private SearchPage(int[] rows, int totalCount) {
+            this.rows = rows;
+            this.totalCount = totalCount;
+        }
+    }
+
+    /**
+     * Folded searchable fields of one bus and the distinct trigrams they contain
+     */
+    private static final class Document {
+        private final String[] fields;
+        private final long[] trigrams;
+
+        private Document(String[] fields, long[] trigrams) {
+            this.fields = fields;
+            this.trigrams = trigrams;
+        }
+
+        static Document of(FleetColumns columns, int row) {
+            String[] fields = {
+                    fold(columns.operator(row)),
+                    fold(columns.garageCode(row)),
+                    fold(columns.doorNumber(row)),
+                    fold(columns.licensePlate(row))
+            };
+            long[] trigrams = Arrays.stream(fields)
+                    .filter(field -> field != null && field.length() >= 3)
+                    .flatMapToLong(field -> IntStream.rangeClosed(0, field.length() - 3)
+                            .mapToLong(i -> trigram(field, i)))
+                    .distinct()
+                    .toArray();
+            return new Document(fields, trigrams);
+        }
+
+        boolean contains(String needle) {
+            for (String field : fields) {
+                if (field != null && field.contains(needle)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.iett.tracking.fleet;
+
+import com.iett.tracking.model.Bus;
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded history of per-refresh change sets, used to answer "what changed since version N"
+ * without sending the whole fleet. Only the most recent {@code capacity} refreshes are kept;
+ * clients further behind than that have to start over from a full snapshot.
+ * <p>
+ * Only vehicle ids are kept; the current state of a changed vehicle is read from the
+ * snapshot of the version the changes lead to. Vehicles that reported new attributes without
+ * changing position are not logged, so a client only downloads buses that actually moved; it
+ * gets their other fields the next time they move.
+ */
+public class FleetChangeLog {
+
+    private final int capacity;
+    private final ArrayDeque<ChangeSet> entries = new ArrayDeque<>();
+
+    public FleetChangeLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record the changes that took the fleet from one version to the next
+     * @param fromVersion The version the diff was computed against
+     * @param toVersion The version the diff produced
+     * @param diff The changes
+     */
+    public synchronized void record(long fromVersion, long toVersion, FleetDiff diff) {
+        entries.addLast(new ChangeSet(fromVersion, toVersion, ids(diff.getAdded()), ids(diff.getMoved()), ids(diff.getRemoved())));
+        while (entries.size() > capacity) {
+            entries.removeFirst();
+        }
+    }
+
+    /**
+     * Collapse every change after the given version into one change set per vehicle
+     * @param sinceVersion The version the client currently has
+     * @return The net changes, or empty if the log no longer reaches back to that version
+     */
+    public synchronized Optional<FleetChanges> since(long sinceVersion) {
+        List<ChangeSet> window = new ArrayList<>();
+        for (ChangeSet entry : entries) {
+            if (entry.fromVersion >= sinceVersion) {
+                window.add(entry);
+            }
+        }
+        if (window.isEmpty() || window.get(0).fromVersion != sinceVersion) {
+            return Optional.empty();
+        }
+
+        // Whether each vehicle existed at sinceVersion follows from the first change seen for it
+        Map<Integer, Boolean> existedBefore = new HashMap<>();
+        Map<Integer, Boolean> present = new LinkedHashMap<>();
+        for (ChangeSet entry : window) {
+            for (int id : entry.added) {
+                existedBefore.putIfAbsent(id, false);
+                present.put(id, true);
+            }
+            for (int id : entry.moved) {
+                existedBefore.putIfAbsent(id, true);
+                present.put(id, true);
+            }
+            for (int id : entry.removed) {
+                existedBefore.putIfAbsent(id, true);
+                present.put(id, false);
+            }
+        }
+
+        List<Integer> added = new ArrayList<>();
+        List<Integer> moved = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        for (Map.Entry<Integer, Boolean> change : present.entrySet()) {
+            boolean existed = existedBefore.get(change.getKey());
+            if (change.getValue()) {
+                (existed ? moved : added).add(change.getKey());
+            } else if (existed) {
+                removed.add(change.getKey());
+            }
+        }
+
+        long toVersion = window.get(window.size() - 1).toVersion;
+        return Optional.of(new FleetChanges(sinceVersion, toVersion, added, moved, removed));
+    }
+
+    private static int[] ids(List<Bus> buses) {
+        return buses.stream().mapToInt(Bus::getId).toArray();
+    }
+
+    private static final class ChangeSet {
+        private final long fromVersion;
+        private final long toVersion;
+        private final int[] added;
+        private final int[] moved;
+        private final int[] removed;
+
+        private ChangeSet(long fromVersion, long toVersion, int[] added, int[] moved, int[] removed) {
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.added = added;
+            this.moved = moved;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * Net changes between two fleet versions, as vehicle ids. {@code moved} holds every vehicle
+     * that existed at the start and whose position changed, {@code removed} holds the vehicles
+     * that disappeared.
+     */
+    @Getter
+    public static final class FleetChanges {
+        private final long fromVersion;
+        private final long toVersion;
+        private final List<Integer> added;
+        private final List<Integer> moved;
+        private final List<Integer> removed;
+
+        public FleetChanges(long fromVersion, long toVersion, List<Integer> added, List<Integer> moved, List<Integer> removed) {
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.added = added;
+            this.moved = moved;
+            this.removed = removed;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.iett.tracking.fleet;
+
+import com.iett.tracking.model.Bus;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Column-oriented, immutable storage of a fleet: one primitive array per numeric field,
+ * timestamps as epoch seconds, and operator and garage fields as {@link StringDictionary} codes.
+ * A row costs roughly a tenth of the heap of a {@link Bus} entity, so many snapshots can be
+ * retained at once, and read endpoints build their responses straight from the columns.
+ * <p>
+ * Missing values are {@code NaN} in the double columns, {@link #NO_TIME} in the time columns
+ * and {@link StringDictionary#NULL} in the coded columns. The {@code coordinate} string is only
+ * stored for the rare rows where it is not simply {@code latitude + "," + longitude}.
+ */
+public final class FleetColumns {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private final StringDictionary dictionary;
+    private final int size;
+
+    private final int[] ids;
+    private final String[] doorNumbers;
+    private final String[] doorNos;
+    private final String[] licensePlates;
+
+    private final int[] operators;
+    private final int[] garages;
+    private final int[] garageCodes;
+    private final int[] nearestGarageCodes;
+    private final int[] nearestGarageNames;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] speeds;
+    private final double[] nearestGarageDistances;
+
+    private final long[] times;
+    private final long[] recordTimes;
+    private final long[] lastUpdated;
+
+    private final Map<Integer, String> coordinateOverrides;
+
+    /**
+     * @param buses The rows, in their final order
+     * @param dictionary Dictionary for the coded columns, shared by every snapshot
+     * @param previous Snapshot whose door number and license plate strings are reused for unchanged values; may be null
+     */
+    FleetColumns(List<Bus> buses, StringDictionary dictionary, FleetSnapshot previous) {
+        this.dictionary = dictionary;
+        this.size = buses.size();
+        this.ids = new int[size];
+        this.doorNumbers = new String[size];
+        this.doorNos = new String[size];
+        this.licensePlates = new String[size];
+        this.operators = new int[size];
+        this.garages = new int[size];
+        this.garageCodes = new int[size];
+        this.nearestGarageCodes = new int[size];
+        this.nearestGarageNames = new int[size];
+        this.latitudes = new double[size];
+        this.longitudes = new double[size];
+        this.speeds = new double[size];
+        this.nearestGarageDistances = new double[size];
+        this.times = new long[size];
+        this.recordTimes = new long[size];
+        this.lastUpdated = new long[size];
+
+        Map<Integer, String> overrides = new HashMap<>();
+        FleetColumns previousColumns = previous != null ? previous.getColumns() : null;
+        for (int row = 0; row < size; row++) {
+            Bus bus = buses.get(row);
+            int previousRow = previous != null ? previous.rowOf(bus.getId()) : -1;
+
+            ids[row] = bus.getId();
+            doorNumbers[row] = previousRow >= 0
+                    ? reuse(previousColumns.doorNumbers[previousRow], bus.getDoorNumber())
+                    : bus.getDoorNumber();
+            doorNos[row] = bus.getDoorNo();
+            licensePlates[row] = previousRow >= 0
+                    ? reuse(previousColumns.licensePlates[previousRow], bus.getLicensePlate())
+                    : bus.getLicensePlate();
+
+            operators[row] = dictionary.encode(bus.getOperator());
+            garages[row] = dictionary.encode(bus.getGarage());
+            garageCodes[row] = dictionary.encode(bus.getGarageCode());
+            nearestGarageCodes[row] = dictionary.encode(bus.getNearestGarageCode());
+            nearestGarageNames[row] = dictionary.encode(bus.getNearestGarageName());
+
+            latitudes[row] = encode(bus.getLatitude());
+            longitudes[row] = encode(bus.getLongitude());
+            speeds[row] = encode(bus.getSpeed());
+            nearestGarageDistances[row] = encode(bus.getDistanceToNearestGarage());
+
+            times[row] = encode(bus.getTime());
+            recordTimes[row] = encode(bus.getRecordTime());
+            lastUpdated[row] = encode(bus.getLastUpdated());
+
+            if (!Objects.equals(bus.getCoordinate(), derivedCoordinate(bus.getLatitude(), bus.getLongitude()))) {
+                overrides.put(row, bus.getCoordinate());
+            }
+        }
+        this.coordinateOverrides = overrides.isEmpty() ? Map.of() : overrides;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int id(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Door number of a row; SOAP data fills {@code doorNumber} while older rows only carry {@code doorNo}
+     */
+    public String doorNumber(int row) {
+        return doorNumbers[row] != null ? doorNumbers[row] : doorNos[row];
+    }
+
+    public String licensePlate(int row) {
+        return licensePlates[row];
+    }
+
+    public String operator(int row) {
+        return dictionary.decode(operators[row]);
+    }
+
+    /**
+     * Dictionary code of the operator of a row, for comparing rows without decoding
+     */
+    public int operatorKey(int row) {
+        return operators[row];
+    }
+
+    public String garageCode(int row) {
+        return dictionary.decode(garageCodes[row]);
+    }
+
+    /**
+     * Dictionary code of the garage code of a row, for comparing against {@link StringDictionary#codeOf(String)}
+     */
+    public int garageCodeKey(int row) {
+        return garageCodes[row];
+    }
+
+    public String nearestGarageCode(int row) {
+        return dictionary.decode(nearestGarageCodes[row]);
+    }
+
+    /**
+     * Dictionary code of the nearest garage code of a row, for grouping rows without decoding
+     */
+    public int nearestGarageCodeKey(int row) {
+        return nearestGarageCodes[row];
+    }
+
+    public String nearestGarageName(int row) {
+        return dictionary.decode(nearestGarageNames[row]);
+    }
+
+    public boolean hasPosition(int row) {
+        return !Double.isNaN(latitudes[row]) && !Double.isNaN(longitudes[row]);
+    }
+
+    /**
+     * @return The latitude, {@code NaN} if unknown
+     */
+    public double latitude(int row) {
+        return latitudes[row];
+    }
+
+    /**
+     * @return The longitude, {@code NaN} if unknown
+     */
+    public double longitude(int row) {
+        return longitudes[row];
+    }
+
+    /**
+     * The latitude column itself, for building indexes without copying; must not be modified
+     */
+    double[] latitudeColumn() {
+        return latitudes;
+    }
+
+    /**
+     * The longitude column itself, for building indexes without copying; must not be modified
+     */
+    double[] longitudeColumn() {
+        return longitudes;
+    }
+
+    public Double latitudeOrNull(int row) {
+        return decode(latitudes[row]);
+    }
+
+    public Double longitudeOrNull(int row) {
+        return decode(longitudes[row]);
+    }
+
+    public Double speedOrNull(int row) {
+        return decode(speeds[row]);
+    }
+
+    public Double nearestGarageDistanceOrNull(int row) {
+        return decode(nearestGarageDistances[row]);
+    }
+
+    public LocalDateTime time(int row) {
+        return decode(times[row]);
+    }
+
+    public LocalDateTime recordTime(int row) {
+        return decode(recordTimes[row]);
+    }
+
+    public LocalDateTime lastUpdated(int row) {
+        return decode(lastUpdated[row]);
+    }
+
+    /**
+     * Materialize one row as an entity, for callers that need a {@link Bus}
+     * @param row The row
+     * @return A new entity holding the row's values
+     */
+    public Bus toBus(int row) {
+        Bus bus = new Bus();
+        bus.setId(ids[row]);
+        bus.setDoorNo(doorNos[row]);
+        bus.setDoorNumber(doorNumbers[row]);
+        bus.setOperator(dictionary.decode(operators[row]));
+        bus.setGarage(dictionary.decode(garages[row]));
+        bus.setGarageCode(dictionary.decode(garageCodes[row]));
+        bus.setLatitude(decode(latitudes[row]));
+        bus.setLongitude(decode(longitudes[row]));
+        bus.setCoordinate(coordinate(row));
+        bus.setSpeed(decode(speeds[row]));
+        bus.setLicensePlate(licensePlates[row]);
+        bus.setTime(decode(times[row]));
+        bus.setRecordTime(decode(recordTimes[row]));
+        bus.setLastUpdated(decode(lastUpdated[row]));
+        bus.setNearestGarageCode(dictionary.decode(nearestGarageCodes[row]));
+        bus.setNearestGarageName(dictionary.decode(nearestGarageNames[row]));
+        bus.setDistanceToNearestGarage(decode(nearestGarageDistances[row]));
+        return bus;
+    }
+
+    /**
+     * Compare a row against an entity on every stored field except {@code lastUpdated},
+     * which is stamped on each fetch. Times are compared to the second.
+     * @param row The row
+     * @param bus The entity
+     * @return True if nothing but {@code lastUpdated} differs
+     */
+    public boolean sameState(int row, Bus bus) {
+        return Objects.equals(doorNos[row], bus.getDoorNo())
+                && Objects.equals(doorNumbers[row], bus.getDoorNumber())
+                && operators[row] == dictionary.codeOf(bus.getOperator())
+                && garages[row] == dictionary.codeOf(bus.getGarage())
+                && garageCodes[row] == dictionary.codeOf(bus.getGarageCode())
+                && sameValue(latitudes[row], bus.getLatitude())
+                && sameValue(longitudes[row], bus.getLongitude())
+                && Objects.equals(coordinate(row), bus.getCoordinate())
+                && sameValue(speeds[row], bus.getSpeed())
+                && Objects.equals(licensePlates[row], bus.getLicensePlate())
+                && times[row] == encode(bus.getTime())
+                && recordTimes[row] == encode(bus.getRecordTime())
+                && nearestGarageCodes[row] == dictionary.codeOf(bus.getNearestGarageCode())
+                && nearestGarageNames[row] == dictionary.codeOf(bus.getNearestGarageName())
+                && sameValue(nearestGarageDistances[row], bus.getDistanceToNearestGarage());
+    }
+
+    /**
+     * Compare the position of a row against an entity
+     * @param row The row
+     * @param bus The entity
+     * @return True if latitude and longitude are both unchanged
+     */
+    public boolean samePosition(int row, Bus bus) {
+        return sameValue(latitudes[row], bus.getLatitude())
+                && sameValue(longitudes[row], bus.getLongitude());
+    }
+
+    private String coordinate(int row) {
+        String override = coordinateOverrides.get(row);
+        if (override != null || coordinateOverrides.containsKey(row)) {
+            return override;
+        }
+        return derivedCoordinate(decode(latitudes[row]), decode(longitudes[row]));
+    }
+
+    private static String derivedCoordinate(Double latitude, Double longitude) {
+        return latitude != null && longitude != null ? latitude + "," + longitude : null;
+    }
+
+    private static String reuse(String previous, String current) {
+        return Objects.equals(previous, current) ? previous : current;
+    }
+
+    private static boolean sameValue(double stored, Double value) {
+        return Double.doubleToLongBits(stored) == Double.doubleToLongBits(encode(value));
+    }
+
+    private static double encode(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double decode(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static long encode(LocalDateTime time) {
+        return time != null ? time.toEpochSecond(ZoneOffset.UTC) : NO_TIME;
+    }
+
+    private static LocalDateTime decode(long epochSecond) {
+        return epochSecond != NO_TIME ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.iett.tracking.fleet;
+
+import com.iett.tracking.model.Bus;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between the fleet currently being served and a freshly fetched one.
+ * Unchanged buses keep their previous {@code lastUpdated}, so the next snapshot matches
+ * what is stored and only added and changed buses need to be written. Of the changed buses,
+ * {@code moved} holds the ones whose position changed; the rest only reported new attributes,
+ * such as a new time or speed, without moving.
+ */
+@Getter
+public final class FleetDiff {
+
+    private final long baseVersion;
+    private final List<Bus> buses;
+    private final List<Bus> added;
+    private final List<Bus> changed;
+    private final List<Bus> moved;
+    private final List<Bus> removed;
+    private final int unchangedCount;
+
+    private FleetDiff(long baseVersion, List<Bus> buses, List<Bus> added, List<Bus> changed, List<Bus> moved, List<Bus> removed, int unchangedCount) {
+        this.baseVersion = baseVersion;
+        this.buses = Collections.unmodifiableList(buses);
+        this.added = Collections.unmodifiableList(added);
+        this.changed = Collections.unmodifiableList(changed);
+        this.moved = Collections.unmodifiableList(moved);
+        this.removed = Collections.unmodifiableList(removed);
+        this.unchangedCount = unchangedCount;
+    }
+
+    /**
+     * Compare a freshly fetched fleet against the given snapshot
+     * @param previous The snapshot currently being served
+     * @param fetched The freshly fetched buses; later entries win on duplicate ids
+     * @return The difference
+     */
+    public static FleetDiff between(FleetSnapshot previous, List<Bus> fetched) {
+        Map<Integer, Bus> incoming = new LinkedHashMap<>();
+        for (Bus bus : fetched) {
+            if (bus.getId() != null) {
+                incoming.put(bus.getId(), bus);
+            }
+        }
+
+        List<Bus> buses = new ArrayList<>(incoming.size());
+        List<Bus> added = new ArrayList<>();
+        List<Bus> changed = new ArrayList<>();
+        List<Bus> moved = new ArrayList<>();
+        int unchanged = 0;
+
+        for (Bus bus : incoming.values()) {
+            int row = previous.rowOf(bus.getId());
+            if (row < 0) {
+                added.add(bus);
+                buses.add(bus);
+            } else if (previous.getColumns().sameState(row, bus)) {
+                bus.setLastUpdated(previous.getColumns().lastUpdated(row));
+                buses.add(bus);
+                unchanged++;
+            } else {
+                changed.add(bus);
+                if (!previous.getColumns().samePosition(row, bus)) {
+                    moved.add(bus);
+                }
+                buses.add(bus);
+            }
+        }
+
+        List<Bus> removed = new ArrayList<>();
+        FleetColumns columns = previous.getColumns();
+        for (int row = 0; row < columns.size(); row++) {
+            if (!incoming.containsKey(columns.id(row))) {
+                removed.add(columns.toBus(row));
+            }
+        }
+
+        return new FleetDiff(previous.getVersion(), buses, added, changed, moved, removed, unchanged);
+    }
+
+    /**
+     * Buses that have to be inserted or updated
+     * @return Added and changed buses
+     */
+    public List<Bus> getUpserts() {
+        List<Bus> upserts = new ArrayList<>(added.size() + changed.size());
+        upserts.addAll(added);
+        upserts.addAll(changed);
+        return upserts;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+}
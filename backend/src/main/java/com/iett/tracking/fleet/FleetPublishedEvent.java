@@ -0,0 +1,22 @@
+package com.iett.tracking.fleet;
+
+import lombok.Getter;
+
+/**
+ * Published by {@link FleetSnapshotStore} every time a new snapshot becomes current.
+ * Carries the snapshot it replaced so listeners can tell which buses entered or left
+ * whatever part of the fleet they care about.
+ */
+@Getter
+public class FleetPublishedEvent {
+
+    private final FleetSnapshot previous;
+    private final FleetSnapshot current;
+    private final FleetDiff diff;
+
+    public FleetPublishedEvent(FleetSnapshot previous, FleetSnapshot current, FleetDiff diff) {
+        this.previous = previous;
+        this.current = current;
+        this.diff = diff;
+    }
+}
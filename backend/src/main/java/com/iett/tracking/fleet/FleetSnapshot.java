@@ -0,0 +1,265 @@
+package com.iett.tracking.fleet;
+
+import com.iett.tracking.geo.BoundingBox;
+import com.iett.tracking.geo.BusClusterIndex;
+import com.iett.tracking.geo.BusGridIndex;
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.util.SoapUtils;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable, versioned view of the whole bus fleet.
+ * Built once per refresh and swapped in atomically by {@link FleetSnapshotStore},
+ * so every read endpoint sees one consistent fleet without touching the database.
+ * <p>
+ * The buses are stored in {@link FleetColumns}, ordered by door number; queries answer with
+ * row numbers into those columns, and callers read the fields they need from there.
+ */
+@Getter
+public final class FleetSnapshot {
+
+    public static final FleetSnapshot EMPTY = new FleetSnapshot(0L, List.of(), null, new StringDictionary());
+
+    private static final Comparator<Bus> DOOR_NUMBER_ORDER = Comparator
+            .comparing(FleetSnapshot::doorNumberOf, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Bus::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final long version;
+    private final LocalDateTime createdAt;
+    private final FleetColumns columns;
+    private final BusGridIndex gridIndex;
+    private final FleetStats stats;
+
+    @Getter(AccessLevel.NONE)
+    private final int[] rowsById;
+
+    // Dropped once the snapshot is no longer current, and rebuilt at most once if a late request still needs them
+    @Getter(AccessLevel.NONE)
+    private volatile BusSearchIndex searchIndex;
+
+    @Getter(AccessLevel.NONE)
+    private volatile BusClusterIndex clusterIndex;
+
+    /**
+     * @param version The snapshot version
+     * @param buses The whole fleet
+     * @param previous The snapshot being replaced, whose search index entries and strings are reused for unchanged buses; may be null
+     * @param dictionary Dictionary for the coded columns, shared by every snapshot of the store
+     */
+    FleetSnapshot(long version, Collection<Bus> buses, FleetSnapshot previous, StringDictionary dictionary) {
+        this.version = version;
+        this.createdAt = LocalDateTime.now();
+
+        // Later entries win on duplicate ids, the same way a re-save would overwrite the row
+        Map<Integer, Bus> idMap = new LinkedHashMap<>();
+        for (Bus bus : buses) {
+            if (bus.getId() != null) {
+                idMap.put(bus.getId(), bus);
+            }
+        }
+
+        List<Bus> sorted = new ArrayList<>(idMap.values());
+        sorted.sort(DOOR_NUMBER_ORDER);
+
+        this.columns = new FleetColumns(sorted, dictionary, previous);
+        this.rowsById = IntStream.range(0, columns.size())
+                .boxed()
+                .sorted(Comparator.comparingInt(columns::id))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.gridIndex = BusGridIndex.build(columns.latitudeColumn(), columns.longitudeColumn());
+        this.stats = FleetStats.compute(columns);
+        this.searchIndex = BusSearchIndex.build(columns, previous);
+        this.clusterIndex = BusClusterIndex.build(columns.latitudeColumn(), columns.longitudeColumn());
+    }
+
+    /**
+     * Door number of a bus; SOAP data fills {@code doorNumber} while older rows only carry {@code doorNo}
+     * @param bus The bus
+     * @return The door number, or null if the bus has none
+     */
+    public static String doorNumberOf(Bus bus) {
+        return bus.getDoorNumber() != null ? bus.getDoorNumber() : bus.getDoorNo();
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public boolean isEmpty() {
+        return columns.size() == 0;
+    }
+
+    /**
+     * Find the row of a bus
+     * @param id The bus id
+     * @return The row, or -1 if the bus is not part of this snapshot
+     */
+    public int rowOf(Integer id) {
+        if (id == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = rowsById.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = columns.id(rowsById[mid]);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return rowsById[mid];
+            }
+        }
+        return -1;
+    }
+
+    public Optional<Bus> findById(Integer id) {
+        int row = rowOf(id);
+        return row >= 0 ? Optional.of(columns.toBus(row)) : Optional.empty();
+    }
+
+    /**
+     * Materialize every bus as an entity. Read endpoints should work on rows instead;
+     * this allocates the whole fleet.
+     * @return The buses ordered by door number
+     */
+    public List<Bus> toBuses() {
+        List<Bus> buses = new ArrayList<>(columns.size());
+        for (int row = 0; row < columns.size(); row++) {
+            buses.add(columns.toBus(row));
+        }
+        return buses;
+    }
+
+    /**
+     * Get one page of buses ordered by door number
+     * @param page Zero-based page index
+     * @param size Page size
+     * @return The rows on the requested page, empty if the page is out of range
+     */
+    public int[] page(int page, int size) {
+        long start = (long) page * size;
+        if (page < 0 || size <= 0 || start >= columns.size()) {
+            return new int[0];
+        }
+        return IntStream.range((int) start, (int) Math.min(start + size, columns.size())).toArray();
+    }
+
+    /**
+     * Get the buses that come after the given bus in door number order
+     * @param afterId Id of the last bus the client has seen, or null to start from the beginning
+     * @param size Maximum number of buses to return
+     * @return The next rows, empty if the id is not part of this snapshot or nothing follows it
+     */
+    public int[] pageAfter(Integer afterId, int size) {
+        int start = 0;
+        if (afterId != null) {
+            int last = rowOf(afterId);
+            if (last < 0) {
+                return new int[0];
+            }
+            // Rows are in door number order, so the next page starts right after the last row
+            start = last + 1;
+        }
+        if (size <= 0 || start >= columns.size()) {
+            return new int[0];
+        }
+        return IntStream.range(start, Math.min(start + size, columns.size())).toArray();
+    }
+
+    /**
+     * Find buses inside a bounding box
+     * @param box The bounding box
+     * @return Rows of the buses inside the box, in door number order
+     */
+    public int[] within(BoundingBox box) {
+        return gridIndex.within(box);
+    }
+
+    /**
+     * Find buses within a radius of a point
+     * @param latitude Latitude of the center
+     * @param longitude Longitude of the center
+     * @param radiusKm The radius in kilometers
+     * @param soapUtils Provides the distance calculation
+     * @return Rows of the buses within the radius and their distances, closest first
+     */
+    public List<BusGridIndex.NearbyBus> near(double latitude, double longitude, double radiusKm, SoapUtils soapUtils) {
+        return gridIndex.near(latitude, longitude, radiusKm, soapUtils);
+    }
+
+    /**
+     * Find one page of buses whose operator, garage code, door number or license plate contains the term,
+     * ignoring case and the Turkish dotted/dotless i distinction
+     * @param term The search term
+     * @param page Zero-based page index
+     * @param size Page size
+     * @return Rows of the matching buses on the page, in door number order, with the total match count
+     */
+    public BusSearchIndex.SearchPage search(String term, int page, int size) {
+        BusSearchIndex index = searchIndex;
+        if (index == null) {
+            index = rebuildSearchIndex();
+        }
+        return index.search(term, page, size);
+    }
+
+    /**
+     * Find the bus clusters a map viewport shows at a zoom level
+     * @param box The viewport
+     * @param zoom The map zoom level
+     * @return The clusters of the grid cells the viewport touches
+     */
+    public List<BusClusterIndex.Cluster> clusters(BoundingBox box, int zoom) {
+        BusClusterIndex index = clusterIndex;
+        if (index == null) {
+            index = rebuildClusterIndex();
+        }
+        return index.clusters(box, zoom);
+    }
+
+    // Only requests that picked up this snapshot just before it was replaced get to the rebuilds.
+    // The first one builds the index and later ones reuse it; it goes once the snapshot is no longer retained.
+
+    private synchronized BusSearchIndex rebuildSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = BusSearchIndex.build(columns, null);
+        }
+        return searchIndex;
+    }
+
+    private synchronized BusClusterIndex rebuildClusterIndex() {
+        if (clusterIndex == null) {
+            clusterIndex = BusClusterIndex.build(columns.latitudeColumn(), columns.longitudeColumn());
+        }
+        return clusterIndex;
+    }
+
+    /**
+     * The search index, or null once it has been released
+     */
+    BusSearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Drop the indexes only the current snapshot needs
+     */
+    void releaseIndexes() {
+        searchIndex = null;
+        clusterIndex = null;
+    }
+}
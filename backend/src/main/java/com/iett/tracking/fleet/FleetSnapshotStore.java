@@ -0,0 +1,120 @@
+package com.iett.tracking.fleet;
+
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.repository.BusLabelRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link FleetSnapshot}. Readers always get a complete snapshot;
+ * writers build a new one off to the side and swap it in with a single reference update.
+ * Every publish is also recorded in a {@link FleetChangeLog} so clients can fetch deltas,
+ * and announced as a {@link FleetPublishedEvent} for push subscribers.
+ * <p>
+ * All snapshots share the {@link StringDictionary} that ingest interns labels with, so
+ * operator and garage codes compare across versions. Only the current snapshot keeps a search index; retained snapshots
+ * serve cursor pages only.
+ */
+@Component
+@Slf4j
+public class FleetSnapshotStore {
+
+    private final AtomicReference<FleetSnapshot> current = new AtomicReference<>(FleetSnapshot.EMPTY);
+    private final FleetChangeLog changeLog;
+    private final int retainedSnapshots;
+    private final Map<Long, FleetSnapshot> recentSnapshots = new ConcurrentHashMap<>();
+    private final ArrayDeque<Long> recentVersions = new ArrayDeque<>();
+    private final ApplicationEventPublisher eventPublisher;
+    private final StringDictionary dictionary;
+
+    // Versions start from the boot time in milliseconds so they keep increasing across restarts
+    private final long bootVersion = System.currentTimeMillis();
+
+    public FleetSnapshotStore(@Value("${iett.fleet.change-log-size}") int changeLogSize,
+                              @Value("${iett.fleet.retained-snapshots}") int retainedSnapshots,
+                              ApplicationEventPublisher eventPublisher,
+                              BusLabelRepository busLabelRepository) {
+        this.changeLog = new FleetChangeLog(changeLogSize);
+        this.retainedSnapshots = Math.max(retainedSnapshots, 1);
+        this.eventPublisher = eventPublisher;
+        this.dictionary = busLabelRepository.getDictionary();
+    }
+
+    /**
+     * Get the snapshot currently being served
+     * @return The current snapshot, {@link FleetSnapshot#EMPTY} until the first publish
+     */
+    public FleetSnapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Build a snapshot from the given buses and make it the current one
+     * @param buses The complete fleet
+     * @return The published snapshot
+     */
+    public synchronized FleetSnapshot publish(Collection<Bus> buses) {
+        return publish(FleetDiff.between(current.get(), new ArrayList<>(buses)));
+    }
+
+    /**
+     * Make the fleet described by the diff the current one
+     * @param diff The changes against the current snapshot
+     * @return The published snapshot
+     */
+    public synchronized FleetSnapshot publish(FleetDiff diff) {
+        FleetSnapshot previous = current.get();
+        if (diff.getBaseVersion() != previous.getVersion()) {
+            // Another publish happened since the diff was computed
+            diff = FleetDiff.between(previous, diff.getBuses());
+        }
+
+        long version = Math.max(previous.getVersion() + 1, bootVersion);
+        FleetSnapshot snapshot = new FleetSnapshot(version, diff.getBuses(), previous, dictionary);
+        changeLog.record(previous.getVersion(), version, diff);
+        retain(snapshot);
+        current.set(snapshot);
+        previous.releaseIndexes();
+
+        log.info("Published fleet snapshot v{} with {} buses ({} added, {} changed, {} removed)",
+                snapshot.getVersion(), snapshot.size(), diff.getAdded().size(), diff.getChanged().size(), diff.getRemoved().size());
+        eventPublisher.publishEvent(new FleetPublishedEvent(previous, snapshot, diff));
+        return snapshot;
+    }
+
+    /**
+     * Get a recently published snapshot, so a client paging through the fleet keeps seeing the same view
+     * @param version The snapshot version
+     * @return The snapshot, or empty if it is older than the retained window
+     */
+    public Optional<FleetSnapshot> find(long version) {
+        return Optional.ofNullable(recentSnapshots.get(version));
+    }
+
+    /**
+     * Get the net changes since the given version
+     * @param sinceVersion The version the client currently has
+     * @return The changes, or empty if the client is too far behind and needs a full snapshot
+     */
+    public Optional<FleetChangeLog.FleetChanges> changesSince(long sinceVersion) {
+        return changeLog.since(sinceVersion);
+    }
+
+    private void retain(FleetSnapshot snapshot) {
+        recentSnapshots.put(snapshot.getVersion(), snapshot);
+        recentVersions.addLast(snapshot.getVersion());
+        while (recentVersions.size() > retainedSnapshots) {
+            recentSnapshots.remove(recentVersions.removeFirst());
+        }
+    }
+}
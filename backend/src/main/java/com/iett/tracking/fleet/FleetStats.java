@@ -0,0 +1,177 @@
+package com.iett.tracking.fleet;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates of one fleet snapshot: for the whole fleet, per assigned garage ({@code garageCode})
+ * and per nearest garage ({@code nearestGarageCode}). Computed in a single pass over the columns
+ * when the snapshot is built, grouping by dictionary code, so serving them is a map lookup.
+ */
+public final class FleetStats {
+
+    /**
+     * Buses reporting less than this speed, in km/h, count as stationary
+     */
+    public static final double STATIONARY_SPEED_KMH = 1.0;
+
+    private final Aggregate fleet;
+    private final Map<String, Aggregate> byAssignedGarage;
+    private final Map<String, Aggregate> byNearestGarage;
+
+    private FleetStats(Aggregate fleet, Map<String, Aggregate> byAssignedGarage, Map<String, Aggregate> byNearestGarage) {
+        this.fleet = fleet;
+        this.byAssignedGarage = byAssignedGarage;
+        this.byNearestGarage = byNearestGarage;
+    }
+
+    /**
+     * Aggregate every row of a fleet
+     * @param columns The fleet columns
+     * @return The aggregates
+     */
+    static FleetStats compute(FleetColumns columns) {
+        Accumulator fleet = new Accumulator();
+        Map<Integer, Accumulator> assigned = new HashMap<>();
+        Map<Integer, Accumulator> nearest = new HashMap<>();
+
+        for (int row = 0; row < columns.size(); row++) {
+            fleet.add(columns, row);
+            if (columns.garageCodeKey(row) != StringDictionary.NULL) {
+                assigned.computeIfAbsent(columns.garageCodeKey(row), key -> new Accumulator()).add(columns, row);
+            }
+            if (columns.nearestGarageCodeKey(row) != StringDictionary.NULL) {
+                nearest.computeIfAbsent(columns.nearestGarageCodeKey(row), key -> new Accumulator()).add(columns, row);
+            }
+        }
+
+        return new FleetStats(fleet.toAggregate(),
+                toAggregates(assigned, columns.getDictionary()),
+                toAggregates(nearest, columns.getDictionary()));
+    }
+
+    /**
+     * The aggregate of every bus
+     */
+    public Aggregate getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Aggregates of the buses assigned to each garage, by garage code in ascending order
+     */
+    public Map<String, Aggregate> getByAssignedGarage() {
+        return byAssignedGarage;
+    }
+
+    /**
+     * Aggregates of the buses currently nearest to each garage, by garage code in ascending order
+     */
+    public Map<String, Aggregate> getByNearestGarage() {
+        return byNearestGarage;
+    }
+
+    /**
+     * Aggregate of the buses assigned to a garage
+     * @param garageCode The garage code
+     * @return The aggregate, with a count of zero if no bus is assigned to the garage
+     */
+    public Aggregate assignedTo(String garageCode) {
+        return byAssignedGarage.getOrDefault(garageCode, Aggregate.NONE);
+    }
+
+    /**
+     * Aggregate of the buses whose nearest garage is the given one
+     * @param garageCode The garage code
+     * @return The aggregate, with a count of zero if the garage is nearest to no bus
+     */
+    public Aggregate nearestTo(String garageCode) {
+        return byNearestGarage.getOrDefault(garageCode, Aggregate.NONE);
+    }
+
+    private static Map<String, Aggregate> toAggregates(Map<Integer, Accumulator> accumulators, StringDictionary dictionary) {
+        Map<String, Aggregate> aggregates = new TreeMap<>();
+        for (Map.Entry<Integer, Accumulator> entry : accumulators.entrySet()) {
+            aggregates.put(dictionary.decode(entry.getKey()), entry.getValue().toAggregate());
+        }
+        return Collections.unmodifiableMap(aggregates);
+    }
+
+    /**
+     * Counts, speeds and distances to the nearest garage of a group of buses.
+     * Speed and distance figures only cover the buses that report them and are null if none does.
+     */
+    @Value
+    public static class Aggregate {
+
+        static final Aggregate NONE = new Aggregate(0, 0, null, null, null, null, null);
+
+        int count;
+        int stationaryCount;
+        Double meanSpeed;
+        Double maxSpeed;
+        Double distanceP50Km;
+        Double distanceP90Km;
+        Double distanceP99Km;
+    }
+
+    private static final class Accumulator {
+
+        private int count;
+        private int stationaryCount;
+        private int speedCount;
+        private double speedSum;
+        private double maxSpeed = Double.NEGATIVE_INFINITY;
+        private double[] distances = new double[16];
+        private int distanceCount;
+
+        void add(FleetColumns columns, int row) {
+            count++;
+            Double speed = columns.speedOrNull(row);
+            if (speed != null) {
+                speedCount++;
+                speedSum += speed;
+                maxSpeed = Math.max(maxSpeed, speed);
+                if (speed < STATIONARY_SPEED_KMH) {
+                    stationaryCount++;
+                }
+            }
+            Double distance = columns.nearestGarageDistanceOrNull(row);
+            if (distance != null) {
+                if (distanceCount == distances.length) {
+                    distances = Arrays.copyOf(distances, distanceCount * 2);
+                }
+                distances[distanceCount++] = distance;
+            }
+        }
+
+        Aggregate toAggregate() {
+            double[] sorted = Arrays.copyOf(distances, distanceCount);
+            Arrays.sort(sorted);
+            return new Aggregate(
+                    count,
+                    stationaryCount,
+                    speedCount > 0 ? speedSum / speedCount : null,
+                    speedCount > 0 ? maxSpeed : null,
+                    percentile(sorted, 0.50),
+                    percentile(sorted, 0.90),
+                    percentile(sorted, 0.99));
+        }
+
+        /**
+         * Nearest-rank percentile, so the result is always one of the values
+         */
+        private static Double percentile(double[] sorted, double fraction) {
+            if (sorted.length == 0) {
+                return null;
+            }
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
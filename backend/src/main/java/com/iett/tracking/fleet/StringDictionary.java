@@ -0,0 +1,82 @@
+package com.iett.tracking.fleet;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only mapping between low-cardinality strings (operators, garage codes and names) and
+ * small integer codes. Codes never change once assigned, so columns built at different times can
+ * share one dictionary and compare codes instead of strings. Decoding never locks.
+ */
+public final class StringDictionary {
+
+    /**
+     * Code of a null value
+     */
+    public static final int NULL = -1;
+
+    /**
+     * Returned by {@link #codeOf(String)} for a string that has never been encoded
+     */
+    public static final int ABSENT = -2;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private int size;
+
+    /**
+     * Get the code of a string, assigning the next free code if it is new
+     * @param value The string, may be null
+     * @return The code, {@link #NULL} for null
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    /**
+     * Get the code of a string without assigning one
+     * @param value The string, may be null
+     * @return The code, {@link #NULL} for null, or {@link #ABSENT} if the string was never encoded
+     */
+    public int codeOf(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : ABSENT;
+    }
+
+    /**
+     * Get the string behind a code
+     * @param code A code returned by {@link #encode(String)}
+     * @return The string, null for {@link #NULL}
+     */
+    public String decode(int code) {
+        return code == NULL ? null : values[code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        // Publish the array before the code, so whoever sees the code can decode it
+        values = current;
+        codes.put(value, size);
+        return size++;
+    }
+}
@@ -0,0 +1,122 @@
+package com.iett.tracking.fleet;
+
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.util.SoapUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Follows every vehicle across refreshes: when it last sent a real fix, when it was last seen
+ * moving, and how many fixes in a row it has reported standing still. Only the buses a refresh
+ * added or changed are looked at, since an unchanged bus sent no new fix; after each refresh
+ * an immutable {@link VehicleStates} for the new snapshot is published for the read endpoints.
+ * <p>
+ * A fix counts when the vehicle sent a time that is later than its previous one, so units that
+ * repeat an old report, or send none at all, do not look live.
+ */
+@Component
+@Slf4j
+public class VehicleStateTracker {
+
+    private final SoapUtils soapUtils;
+    private final double movementKm;
+
+    // Only touched while a snapshot is published, which FleetSnapshotStore serializes
+    private final Map<Integer, State> states = new HashMap<>();
+    private volatile VehicleStates current = VehicleStates.EMPTY;
+
+    public VehicleStateTracker(SoapUtils soapUtils, @Value("${iett.vehicles.movement-meters}") double movementMeters) {
+        this.soapUtils = soapUtils;
+        this.movementKm = movementMeters / 1000;
+    }
+
+    /**
+     * The states of the current fleet snapshot
+     * @return The states
+     */
+    public VehicleStates current() {
+        return current;
+    }
+
+    @EventListener
+    public synchronized void onFleetPublished(FleetPublishedEvent event) {
+        FleetDiff diff = event.getDiff();
+        for (Bus bus : diff.getRemoved()) {
+            states.remove(bus.getId());
+        }
+        for (Bus bus : diff.getAdded()) {
+            update(bus);
+        }
+        for (Bus bus : diff.getChanged()) {
+            update(bus);
+        }
+        current = toVehicleStates(event.getCurrent());
+        log.debug("Updated vehicle states of snapshot v{} from {} new and changed buses",
+                event.getCurrent().getVersion(), diff.getAdded().size() + diff.getChanged().size());
+    }
+
+    private void update(Bus bus) {
+        State state = states.computeIfAbsent(bus.getId(), id -> new State());
+        LocalDateTime fixTime = bus.getTime();
+        if (fixTime == null || (state.lastFixTime != null && !fixTime.isAfter(state.lastFixTime))) {
+            return;
+        }
+        state.lastFixTime = fixTime;
+
+        boolean stationary = bus.getSpeed() == null || bus.getSpeed() < FleetStats.STATIONARY_SPEED_KMH;
+        if (stationary && bus.getLatitude() != null && bus.getLongitude() != null) {
+            // A unit that reports no speed, or a stale one, can still be seen moving between fixes
+            if (state.latitude != null && soapUtils.calculateDistance(state.latitude, state.longitude,
+                    bus.getLatitude(), bus.getLongitude()) > movementKm) {
+                stationary = false;
+            }
+        }
+        // The next fix is compared with the position the vehicle was last seen moving from or stopped at
+        if (!stationary || state.latitude == null) {
+            state.latitude = bus.getLatitude();
+            state.longitude = bus.getLongitude();
+        }
+
+        if (stationary) {
+            state.zeroSpeedSamples++;
+            if (state.stoppedSince == null) {
+                state.stoppedSince = fixTime;
+            }
+        } else {
+            state.zeroSpeedSamples = 0;
+            state.stoppedSince = null;
+            state.lastMovementTime = fixTime;
+        }
+    }
+
+    private VehicleStates toVehicleStates(FleetSnapshot snapshot) {
+        FleetColumns columns = snapshot.getColumns();
+        long[] lastFixTimes = new long[columns.size()];
+        long[] lastMovementTimes = new long[columns.size()];
+        long[] stoppedSince = new long[columns.size()];
+        int[] zeroSpeedSamples = new int[columns.size()];
+        for (int row = 0; row < columns.size(); row++) {
+            State state = states.get(columns.id(row));
+            lastFixTimes[row] = VehicleStates.encode(state != null ? state.lastFixTime : null);
+            lastMovementTimes[row] = VehicleStates.encode(state != null ? state.lastMovementTime : null);
+            stoppedSince[row] = VehicleStates.encode(state != null ? state.stoppedSince : null);
+            zeroSpeedSamples[row] = state != null ? state.zeroSpeedSamples : 0;
+        }
+        return new VehicleStates(snapshot, lastFixTimes, lastMovementTimes, stoppedSince, zeroSpeedSamples);
+    }
+
+    private static final class State {
+        LocalDateTime lastFixTime;
+        LocalDateTime lastMovementTime;
+        LocalDateTime stoppedSince;
+        int zeroSpeedSamples;
+        Double latitude;
+        Double longitude;
+    }
+}
@@ -0,0 +1,130 @@
+package com.iett.tracking.fleet;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable per-vehicle state of one fleet snapshot, built by {@link VehicleStateTracker} after
+ * every refresh. Values are held per snapshot row, and rows are kept sorted by last real fix and
+ * by the time they stopped, so stale and stopped vehicles are a prefix found by binary search.
+ * <p>
+ * Times are epoch seconds of the fix times sent by the vehicles; {@link FleetColumns#NO_TIME}
+ * means unknown.
+ */
+public final class VehicleStates {
+
+    public static final VehicleStates EMPTY = new VehicleStates(FleetSnapshot.EMPTY,
+            new long[0], new long[0], new long[0], new int[0]);
+
+    private final FleetSnapshot snapshot;
+    private final long[] lastFixTimes;
+    private final long[] lastMovementTimes;
+    private final long[] stoppedSince;
+    private final int[] zeroSpeedSamples;
+
+    // Every row, oldest fix first; rows that never sent a fix come first
+    private final int[] rowsByLastFix;
+    // Rows that are currently stationary, longest stopped first
+    private final int[] stoppedRows;
+
+    VehicleStates(FleetSnapshot snapshot, long[] lastFixTimes, long[] lastMovementTimes, long[] stoppedSince,
+                  int[] zeroSpeedSamples) {
+        this.snapshot = snapshot;
+        this.lastFixTimes = lastFixTimes;
+        this.lastMovementTimes = lastMovementTimes;
+        this.stoppedSince = stoppedSince;
+        this.zeroSpeedSamples = zeroSpeedSamples;
+        this.rowsByLastFix = IntStream.range(0, lastFixTimes.length)
+                .boxed()
+                .sorted(Comparator.comparingLong(row -> lastFixTimes[row]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.stoppedRows = IntStream.range(0, stoppedSince.length)
+                .filter(row -> stoppedSince[row] != FleetColumns.NO_TIME)
+                .boxed()
+                .sorted(Comparator.comparingLong(row -> stoppedSince[row]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * The snapshot whose rows the states refer to
+     */
+    public FleetSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Find vehicles whose last real fix is older than the cutoff, or that never sent one
+     * @param cutoff Fixes before this time are stale
+     * @return The rows, oldest fix first
+     */
+    public int[] findStale(LocalDateTime cutoff) {
+        return Arrays.copyOf(rowsByLastFix, countBefore(rowsByLastFix, lastFixTimes, encode(cutoff)));
+    }
+
+    /**
+     * Find vehicles that have been stationary since the cutoff or longer
+     * @param cutoff Latest time a vehicle may have stopped at
+     * @return The rows, longest stopped first
+     */
+    public int[] findStopped(LocalDateTime cutoff) {
+        return Arrays.copyOf(stoppedRows, countBefore(stoppedRows, stoppedSince, encode(cutoff) + 1));
+    }
+
+    /**
+     * @return The time of the last fix the vehicle really sent, null if none
+     */
+    public LocalDateTime lastFixTime(int row) {
+        return decode(lastFixTimes[row]);
+    }
+
+    /**
+     * @return The time of the last fix at which the vehicle was moving, null if it was never seen moving
+     */
+    public LocalDateTime lastMovementTime(int row) {
+        return decode(lastMovementTimes[row]);
+    }
+
+    /**
+     * @return The time of the first fix of the current stop, null if the vehicle is moving
+     */
+    public LocalDateTime stoppedSince(int row) {
+        return decode(stoppedSince[row]);
+    }
+
+    /**
+     * @return The number of consecutive fixes below the stationary speed, up to the latest
+     */
+    public int zeroSpeedSamples(int row) {
+        return zeroSpeedSamples[row];
+    }
+
+    /**
+     * Count the leading rows whose time is before the limit
+     */
+    private static int countBefore(int[] sortedRows, long[] times, long limit) {
+        int low = 0;
+        int high = sortedRows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[sortedRows[mid]] < limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static long encode(LocalDateTime time) {
+        return time != null ? time.toEpochSecond(ZoneOffset.UTC) : FleetColumns.NO_TIME;
+    }
+
+    private static LocalDateTime decode(long epochSecond) {
+        return epochSecond != FleetColumns.NO_TIME ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.iett.tracking.geo;
+
+import lombok.Value;
+
+/**
+ * Axis-aligned latitude/longitude rectangle, written as {@code minLon,minLat,maxLon,maxLat}
+ * the same way GeoJSON and most map libraries express a viewport.
+ */
+@Value
+public class BoundingBox {
+
+    double minLongitude;
+    double minLatitude;
+    double maxLongitude;
+    double maxLatitude;
+
+    /**
+     * Parse a bounding box from its {@code minLon,minLat,maxLon,maxLat} form
+     * @param value The bounding box string
+     * @return The bounding box
+     * @throws IllegalArgumentException If the value is not four finite numbers or the corners are out of order
+     */
+    public static BoundingBox parse(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Bounding box must be minLon,minLat,maxLon,maxLat: " + value);
+        }
+        double[] numbers = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                numbers[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bounding box must be minLon,minLat,maxLon,maxLat: " + value);
+            }
+            // NaN would pass the order check below, since every comparison with it is false
+            if (!Double.isFinite(numbers[i])) {
+                throw new IllegalArgumentException("Bounding box coordinates must be finite: " + value);
+            }
+        }
+        if (numbers[0] > numbers[2] || numbers[1] > numbers[3]) {
+            throw new IllegalArgumentException("Bounding box corners are out of order: " + value);
+        }
+        return new BoundingBox(numbers[0], numbers[1], numbers[2], numbers[3]);
+    }
+
+    public boolean contains(Double latitude, Double longitude) {
+        return latitude != null && longitude != null
+                && latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return minLongitude + "," + minLatitude + "," + maxLongitude + "," + maxLatitude;
+    }
+}
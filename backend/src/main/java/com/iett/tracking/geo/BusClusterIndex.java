@@ -0,0 +1,203 @@
+package com.iett.tracking.geo;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Immutable hierarchy of bus clusters for map zoom levels 0 to {@link #MAX_ZOOM}. At each zoom
+ * the Web Mercator world is cut into square cells of {@link #CELL_PIXELS} screen pixels, and every
+ * cell holding buses becomes one cluster with its bus count and centroid. The finest level is
+ * built from the coordinate columns; every coarser level merges 2x2 cells of the level below,
+ * so the whole hierarchy costs a few sorts per refresh and a viewport lookup only reads the
+ * cells it covers.
+ */
+public final class BusClusterIndex {
+
+    public static final int MAX_ZOOM = 16;
+    public static final int CELL_PIXELS = 64;
+
+    private static final int TILE_PIXELS = 256;
+    // log2 of the cells per world axis at zoom 0; each zoom level doubles them
+    private static final int ZOOM_0_SHIFT = Integer.numberOfTrailingZeros(TILE_PIXELS / CELL_PIXELS);
+    private static final double MAX_LATITUDE = 85.05112878;
+    // Sort entries pack a cell key (at most 2 * (MAX_ZOOM + 2) bits) above an index of this many bits
+    private static final int INDEX_BITS = 24;
+
+    private final Level[] levels;
+
+    private BusClusterIndex(Level[] levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * A cluster: the centroid and count of the buses in one cell, and the row of the bus
+     * when the cell holds exactly one
+     */
+    @Value
+    public static class Cluster {
+        double latitude;
+        double longitude;
+        int count;
+        /** Row of the only bus in the cluster, or -1 if it holds more than one */
+        int row;
+    }
+
+    /**
+     * Build the hierarchy over every row that has a position
+     * @param latitudes Latitude per row, {@code NaN} if unknown
+     * @param longitudes Longitude per row, {@code NaN} if unknown
+     * @return The index
+     */
+    public static BusClusterIndex build(double[] latitudes, double[] longitudes) {
+        if (latitudes.length >= 1 << INDEX_BITS) {
+            throw new IllegalArgumentException("Too many buses to cluster: " + latitudes.length);
+        }
+        Level[] levels = new Level[MAX_ZOOM + 1];
+
+        int shift = MAX_ZOOM + ZOOM_0_SHIFT;
+        long[] entries = new long[latitudes.length];
+        int n = 0;
+        for (int row = 0; row < latitudes.length; row++) {
+            if (Double.isNaN(latitudes[row]) || Double.isNaN(longitudes[row])) {
+                continue;
+            }
+            long key = ((long) cellY(latitudes[row], shift) << shift) | cellX(longitudes[row], shift);
+            entries[n++] = key << INDEX_BITS | row;
+        }
+        levels[MAX_ZOOM] = Level.merge(Arrays.copyOf(entries, n),
+                i -> 1, i -> latitudes[i], i -> longitudes[i], i -> i);
+
+        for (int zoom = MAX_ZOOM - 1; zoom >= 0; zoom--) {
+            Level child = levels[zoom + 1];
+            int childShift = zoom + 1 + ZOOM_0_SHIFT;
+            int parentShift = zoom + ZOOM_0_SHIFT;
+            long[] parentEntries = new long[child.size()];
+            for (int i = 0; i < child.size(); i++) {
+                long cx = child.keys[i] & ((1L << childShift) - 1);
+                long cy = child.keys[i] >>> childShift;
+                parentEntries[i] = (((cy >> 1) << parentShift) | (cx >> 1)) << INDEX_BITS | i;
+            }
+            levels[zoom] = Level.merge(parentEntries,
+                    i -> child.counts[i], i -> child.latitudes[i], i -> child.longitudes[i], i -> child.rows[i]);
+        }
+        return new BusClusterIndex(levels);
+    }
+
+    /**
+     * Find the clusters of the cells a bounding box touches
+     * @param box The viewport
+     * @param zoom The map zoom level; levels above {@link #MAX_ZOOM} use the finest clusters
+     * @return The clusters, ordered north to south and then west to east
+     */
+    public List<Cluster> clusters(BoundingBox box, int zoom) {
+        Level level = levels[clampZoom(zoom)];
+        int shift = clampZoom(zoom) + ZOOM_0_SHIFT;
+        int minX = cellX(box.getMinLongitude(), shift);
+        int maxX = cellX(box.getMaxLongitude(), shift);
+        // Mercator y grows southwards, so the northern edge has the smaller cell row
+        int minY = cellY(box.getMaxLatitude(), shift);
+        int maxY = cellY(box.getMinLatitude(), shift);
+
+        List<Cluster> clusters = new ArrayList<>();
+        for (long y = minY; y <= maxY; y++) {
+            long first = y << shift | minX;
+            long last = y << shift | maxX;
+            int i = Arrays.binarySearch(level.keys, first);
+            for (i = i >= 0 ? i : -i - 1; i < level.size() && level.keys[i] <= last; i++) {
+                clusters.add(new Cluster(level.latitudes[i], level.longitudes[i], level.counts[i], level.rows[i]));
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * The zoom level whose clusters answer a request for the given zoom
+     */
+    public static int clampZoom(int zoom) {
+        return Math.max(0, Math.min(zoom, MAX_ZOOM));
+    }
+
+    private static int cellX(double longitude, int shift) {
+        double x = (longitude + 180) / 360;
+        return clampCell(x, shift);
+    }
+
+    private static int cellY(double latitude, int shift) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return clampCell(y, shift);
+    }
+
+    private static int clampCell(double fraction, int shift) {
+        int cells = 1 << shift;
+        return (int) Math.max(0, Math.min(cells - 1, Math.floor(fraction * cells)));
+    }
+
+    /**
+     * The clusters of one zoom level, sorted by cell key (row-major from the north-west corner)
+     */
+    private static final class Level {
+
+        final long[] keys;
+        final int[] counts;
+        final double[] latitudes;
+        final double[] longitudes;
+        final int[] rows;
+
+        private Level(int size) {
+            keys = new long[size];
+            counts = new int[size];
+            latitudes = new double[size];
+            longitudes = new double[size];
+            rows = new int[size];
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        /**
+         * Group sorted entries by cell key into count-weighted centroids
+         * @param entries Cell key above {@link #INDEX_BITS} bits of source index
+         */
+        static Level merge(long[] entries, IntUnaryOperator count, IntToDoubleFunction latitude,
+                           IntToDoubleFunction longitude, IntUnaryOperator row) {
+            Arrays.sort(entries);
+            int cells = 0;
+            for (int i = 0; i < entries.length; i++) {
+                if (i == 0 || entries[i] >>> INDEX_BITS != entries[i - 1] >>> INDEX_BITS) {
+                    cells++;
+                }
+            }
+
+            Level level = new Level(cells);
+            int cell = -1;
+            for (int i = 0; i < entries.length; i++) {
+                long key = entries[i] >>> INDEX_BITS;
+                int source = (int) (entries[i] & ((1L << INDEX_BITS) - 1));
+                if (cell < 0 || level.keys[cell] != key) {
+                    cell++;
+                    level.keys[cell] = key;
+                    level.rows[cell] = row.applyAsInt(source);
+                } else {
+                    level.rows[cell] = -1;
+                }
+                int weight = count.applyAsInt(source);
+                level.counts[cell] += weight;
+                // Running sums first; divided into centroids below
+                level.latitudes[cell] += latitude.applyAsDouble(source) * weight;
+                level.longitudes[cell] += longitude.applyAsDouble(source) * weight;
+            }
+            for (int i = 0; i < cells; i++) {
+                level.latitudes[i] /= level.counts[i];
+                level.longitudes[i] /= level.counts[i];
+            }
+            return level;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.iett.tracking.geo;
+
+import com.iett.tracking.util.SoapUtils;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable uniform grid over bus positions. Each cell covers {@link #CELL_DEGREES} of
+ * latitude and longitude (about 1 km in Istanbul) and lists the rows of its buses in the
+ * coordinate columns the index was built from, so a viewport query only looks at the cells it
+ * overlaps and returns rows in ascending order.
+ */
+public final class BusGridIndex {
+
+    public static final double CELL_DEGREES = 0.01;
+
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Long, int[]> cells;
+
+    private BusGridIndex(double[] latitudes, double[] longitudes) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+
+        Map<Long, List<Integer>> cellLists = new HashMap<>();
+        for (int i = 0; i < latitudes.length; i++) {
+            if (Double.isNaN(latitudes[i]) || Double.isNaN(longitudes[i])) {
+                continue;
+            }
+            cellLists.computeIfAbsent(cellKey(cellOf(latitudes[i]), cellOf(longitudes[i])), key -> new ArrayList<>()).add(i);
+        }
+
+        this.cells = new HashMap<>(cellLists.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : cellLists.entrySet()) {
+            this.cells.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Build an index over every row that has a position. The columns are kept, not copied,
+     * and must not change afterwards.
+     * @param latitudes Latitude per row, {@code NaN} if unknown
+     * @param longitudes Longitude per row, {@code NaN} if unknown
+     * @return The index
+     */
+    public static BusGridIndex build(double[] latitudes, double[] longitudes) {
+        return new BusGridIndex(latitudes, longitudes);
+    }
+
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    /**
+     * Find the buses inside a bounding box
+     * @param box The bounding box
+     * @return Rows inside the box, ascending
+     */
+    public int[] within(BoundingBox box) {
+        int[] matches = candidates(box.getMinLatitude(), box.getMaxLatitude(), box.getMinLongitude(), box.getMaxLongitude());
+        int n = 0;
+        for (int i : matches) {
+            if (box.contains(latitudes[i], longitudes[i])) {
+                matches[n++] = i;
+            }
+        }
+        return Arrays.copyOf(matches, n);
+    }
+
+    /**
+     * Find the buses within a radius, using the same haversine distance as {@link SoapUtils#calculateDistance}
+     * @param latitude Latitude of the center
+     * @param longitude Longitude of the center
+     * @param radiusKm The radius in kilometers
+     * @param soapUtils Provides the distance calculation
+     * @return Rows within the radius with their distances, closest first
+     */
+    public List<NearbyBus> near(double latitude, double longitude, double radiusKm, SoapUtils soapUtils) {
+        // Smallest latitude/longitude rectangle that contains the whole circle
+        double angular = radiusKm / EARTH_RADIUS_KM;
+        double latDelta = Math.toDegrees(angular);
+        double minLat = latitude - latDelta;
+        double maxLat = latitude + latDelta;
+        double minLon = -180;
+        double maxLon = 180;
+        if (maxLat < 90 && minLat > -90) {
+            double lonDelta = Math.toDegrees(Math.asin(Math.min(1, Math.sin(angular) / Math.cos(Math.toRadians(latitude)))));
+            minLon = longitude - lonDelta;
+            maxLon = longitude + lonDelta;
+        }
+
+        List<NearbyBus> result = new ArrayList<>();
+        for (int i : candidates(minLat, maxLat, minLon, maxLon)) {
+            double distance = soapUtils.calculateDistance(latitude, longitude, latitudes[i], longitudes[i]);
+            if (distance <= radiusKm) {
+                result.add(new NearbyBus(i, distance));
+            }
+        }
+        result.sort(Comparator.comparingDouble(NearbyBus::getDistance));
+        return result;
+    }
+
+    /**
+     * Rows of the buses in every cell overlapping the rectangle, ascending.
+     * When the rectangle spans more cells than are occupied, walking the occupied cells is cheaper.
+     */
+    private int[] candidates(double minLat, double maxLat, double minLon, double maxLon) {
+        long minRow = cellOf(minLat);
+        long maxRow = cellOf(maxLat);
+        long minCol = cellOf(minLon);
+        long maxCol = cellOf(maxLon);
+
+        List<int[]> hits = new ArrayList<>();
+        int total = 0;
+        if ((maxRow - minRow + 1) * (maxCol - minCol + 1) <= cells.size()) {
+            for (long row = minRow; row <= maxRow; row++) {
+                for (long col = minCol; col <= maxCol; col++) {
+                    int[] cell = cells.get(cellKey((int) row, (int) col));
+                    if (cell != null) {
+                        hits.add(cell);
+                        total += cell.length;
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, int[]> entry : cells.entrySet()) {
+                long row = entry.getKey() >> 32;
+                long col = (int) (long) entry.getKey();
+                if (row >= minRow && row <= maxRow && col >= minCol && col <= maxCol) {
+                    hits.add(entry.getValue());
+                    total += entry.getValue().length;
+                }
+            }
+        }
+
+        int[] result = new int[total];
+        int offset = 0;
+        for (int[] cell : hits) {
+            System.arraycopy(cell, 0, result, offset, cell.length);
+            offset += cell.length;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    @Value
+    public static class NearbyBus {
+        int row;
+        double distance;
+    }
+}
@@ -0,0 +1,155 @@
+package com.iett.tracking.geo;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Douglas-Peucker simplification of a {@link PositionTrack}, with distances in meters on a local
+ * equirectangular projection (accurate to well under a percent across a city).
+ * <p>
+ * One pass ranks every position by the largest tolerance at which the algorithm would still
+ * keep it, so the result for the requested tolerance, and for the tolerance that brings the
+ * track under a point budget, are both read off the same ranking.
+ */
+public final class DouglasPeucker {
+
+    private static final double EARTH_RADIUS_M = 6_371_000;
+
+    private DouglasPeucker() {
+    }
+
+    /**
+     * Result of a simplification
+     */
+    @Value
+    public static class Simplified {
+        /** Indices of the kept positions, ascending; always includes the first and last */
+        int[] indices;
+        /** The tolerance that was applied, larger than requested if the point budget required it */
+        double toleranceMeters;
+    }
+
+    /**
+     * Simplify a track
+     * @param track The track
+     * @param toleranceMeters Maximum distance, in meters, of a dropped position from the simplified line
+     * @param maxPoints Maximum number of positions to keep, at least 2
+     * @return The kept positions and the tolerance that was applied
+     */
+    public static Simplified simplify(PositionTrack track, double toleranceMeters, int maxPoints) {
+        int n = track.size();
+        if (n <= 2) {
+            return new Simplified(IntStream.range(0, n).toArray(), toleranceMeters);
+        }
+
+        // The endpoints are kept whatever the tolerance, even an infinite one
+        double[] significance = significance(track);
+        int kept = 2;
+        for (int i = 1; i < n - 1; i++) {
+            if (significance[i] > toleranceMeters) {
+                kept++;
+            }
+        }
+        if (kept <= maxPoints) {
+            return new Simplified(IntStream.range(0, n)
+                    .filter(i -> i == 0 || i == n - 1 || significance[i] > toleranceMeters)
+                    .toArray(), toleranceMeters);
+        }
+
+        // Over budget: keep the maxPoints most significant positions; the first one left out sets the tolerance
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(significance[b], significance[a]));
+        int[] indices = new int[maxPoints];
+        for (int i = 0; i < maxPoints; i++) {
+            indices[i] = order[i];
+        }
+        Arrays.sort(indices);
+        return new Simplified(indices, significance[order[maxPoints]]);
+    }
+
+    /**
+     * For every position, the largest tolerance at which Douglas-Peucker keeps it. A position is
+     * only considered once the segment around it has been split, so its value is capped by the
+     * value of the split that created that segment. The endpoints are always kept.
+     */
+    private static double[] significance(PositionTrack track) {
+        int n = track.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double cosLatitude = Math.cos(Math.toRadians(track.latitude(0)));
+        for (int i = 0; i < n; i++) {
+            x[i] = EARTH_RADIUS_M * Math.toRadians(track.longitude(i)) * cosLatitude;
+            y[i] = EARTH_RADIUS_M * Math.toRadians(track.latitude(i));
+        }
+
+        double[] significance = new double[n];
+        significance[0] = Double.POSITIVE_INFINITY;
+        significance[n - 1] = Double.POSITIVE_INFINITY;
+
+        // Explicit stack of (first, last, cap) segments; recursion could overflow on long tracks
+        int[] firsts = new int[64];
+        int[] lasts = new int[64];
+        double[] caps = new double[64];
+        int depth = 0;
+        firsts[0] = 0;
+        lasts[0] = n - 1;
+        caps[0] = Double.POSITIVE_INFINITY;
+        depth++;
+
+        while (depth > 0) {
+            depth--;
+            int first = firsts[depth];
+            int last = lasts[depth];
+            double cap = caps[depth];
+            if (last - first < 2) {
+                continue;
+            }
+
+            int farthest = -1;
+            double maxDistance = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            double value = Math.min(maxDistance, cap);
+            significance[farthest] = value;
+
+            if (depth + 2 > firsts.length) {
+                firsts = Arrays.copyOf(firsts, firsts.length * 2);
+                lasts = Arrays.copyOf(lasts, lasts.length * 2);
+                caps = Arrays.copyOf(caps, caps.length * 2);
+            }
+            firsts[depth] = first;
+            lasts[depth] = farthest;
+            caps[depth] = value;
+            depth++;
+            firsts[depth] = farthest;
+            lasts[depth] = last;
+            caps[depth] = value;
+            depth++;
+        }
+        return significance;
+    }
+
+    /**
+     * Distance from a point to the segment between two others
+     */
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+}
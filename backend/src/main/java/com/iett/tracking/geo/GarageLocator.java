@@ -0,0 +1,138 @@
+package com.iett.tracking.geo;
+
+import com.iett.tracking.model.Garage;
+import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.util.SoapUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Holds the {@link GarageSpatialIndex} for the current garage data.
+ * The index is rebuilt whenever garages change and loaded from the database on first use,
+ * which also makes the rebuild the place where the garage data version is bumped.
+ * <p>
+ * The version is bumped in memory, so it cannot commit together with the garage table. Writers
+ * therefore run through {@link #change(Supplier)} and readers that tag rows with the version
+ * through {@link #read(LongFunction)}, which keeps a read from seeing new rows under the old version.
+ */
+@Component
+@Slf4j
+public class GarageLocator {
+
+    private final GarageRepository garageRepository;
+    private final SoapUtils soapUtils;
+    private volatile GarageSpatialIndex index;
+    private volatile long version;
+    private final ReadWriteLock changeLock = new ReentrantReadWriteLock();
+
+    // Versions start from the boot time in milliseconds so they keep increasing across restarts
+    private final long bootVersion = System.currentTimeMillis();
+
+    public GarageLocator(GarageRepository garageRepository, SoapUtils soapUtils) {
+        this.garageRepository = garageRepository;
+        this.soapUtils = soapUtils;
+    }
+
+    /**
+     * Get the current index, loading it from the database if it has not been built yet
+     * @return The current garage index
+     */
+    public GarageSpatialIndex current() {
+        GarageSpatialIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = reload();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Find the garage closest to the given point
+     * @param latitude Latitude of the point
+     * @param longitude Longitude of the point
+     * @return The nearest garage and its distance in kilometers, empty if there are no garages
+     */
+    public Optional<GarageSpatialIndex.NearestGarage> nearest(double latitude, double longitude) {
+        return current().nearest(latitude, longitude);
+    }
+
+    /**
+     * Find a garage of the current index by its id, without a database query
+     * @param id The garage id
+     * @return The garage, empty if there is no garage with that id
+     */
+    public Optional<Garage> findById(long id) {
+        return current().findById(id);
+    }
+
+    /**
+     * Get the version of the garage data; it changes every time garages are refreshed or edited
+     * @return The current garage data version
+     */
+    public long getVersion() {
+        current();
+        return version;
+    }
+
+    /**
+     * Change the stored garages while no {@link #read(LongFunction)} is running. The change must
+     * commit and rebuild the index before it returns.
+     * @param change Writes the garages and rebuilds the index
+     * @return The result of the change
+     */
+    public <T> T change(Supplier<T> change) {
+        changeLock.writeLock().lock();
+        try {
+            return change.get();
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read garages from the database while no {@link #change(Supplier)} is running, so the rows
+     * read all belong to the version passed to the reader
+     * @param read Reads the garages of the given version
+     * @return The result of the read
+     */
+    public <T> T read(LongFunction<T> read) {
+        changeLock.readLock().lock();
+        try {
+            return read.apply(getVersion());
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from the given garages
+     * @param garages The complete set of garages
+     * @return The new index
+     */
+    public synchronized GarageSpatialIndex rebuild(Collection<Garage> garages) {
+        GarageSpatialIndex rebuilt = GarageSpatialIndex.build(garages, soapUtils);
+        index = rebuilt;
+        version = Math.max(version + 1, bootVersion);
+        log.info("Built garage spatial index with {} garages", rebuilt.size());
+        return rebuilt;
+    }
+
+    /**
+     * Rebuild the index from the garages stored in the database
+     * @return The new index
+     */
+    public GarageSpatialIndex reload() {
+        return rebuild(garageRepository.findAll());
+    }
+}
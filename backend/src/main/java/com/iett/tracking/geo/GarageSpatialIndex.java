@@ -0,0 +1,203 @@
+package com.iett.tracking.geo;
+
+import com.iett.tracking.model.Garage;
+import com.iett.tracking.util.SoapUtils;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable 2-d tree over garage coordinates for nearest-garage lookups.
+ * Coordinates are parsed once when the index is built; queries use the same
+ * haversine distance as {@link SoapUtils#calculateDistance} and prune subtrees
+ * with exact great-circle lower bounds, so results match a full linear scan.
+ * Every garage, including those without a usable coordinate, can also be looked up by id.
+ */
+public final class GarageSpatialIndex {
+
+    public static final GarageSpatialIndex EMPTY = new GarageSpatialIndex(List.of(), Map.of(), null);
+
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    private final SoapUtils soapUtils;
+    private final Garage[] garages;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Long, Garage> garagesById;
+
+    private GarageSpatialIndex(List<GarageNode> nodes, Map<Long, Garage> garagesById, SoapUtils soapUtils) {
+        this.soapUtils = soapUtils;
+        this.garagesById = garagesById;
+
+        GarageNode[] sorted = nodes.toArray(new GarageNode[0]);
+        build(sorted, 0, sorted.length, 0);
+
+        this.garages = new Garage[sorted.length];
+        this.latitudes = new double[sorted.length];
+        this.longitudes = new double[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            garages[i] = sorted[i].garage;
+            latitudes[i] = sorted[i].latitude;
+            longitudes[i] = sorted[i].longitude;
+        }
+    }
+
+    /**
+     * Build an index over every garage with a valid "latitude,longitude" coordinate
+     * @param garages The garages
+     * @param soapUtils Provides the distance calculation
+     * @return The index
+     */
+    public static GarageSpatialIndex build(Collection<Garage> garages, SoapUtils soapUtils) {
+        List<GarageNode> nodes = new ArrayList<>(garages.size());
+        Map<Long, Garage> garagesById = new HashMap<>(garages.size() * 2);
+        for (Garage garage : garages) {
+            if (garage.getId() != null) {
+                garagesById.put(garage.getId(), garage);
+            }
+            GarageNode node = GarageNode.parse(garage);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return new GarageSpatialIndex(nodes, garagesById, soapUtils);
+    }
+
+    public int size() {
+        return garages.length;
+    }
+
+    public boolean isEmpty() {
+        return garages.length == 0;
+    }
+
+    /**
+     * Find a garage by its id
+     * @param id The garage id
+     * @return The garage, empty if the index has no garage with that id
+     */
+    public Optional<Garage> findById(long id) {
+        return Optional.ofNullable(garagesById.get(id));
+    }
+
+    /**
+     * Find the garage closest to the given point
+     * @param latitude Latitude of the point
+     * @param longitude Longitude of the point
+     * @return The nearest garage and its distance in kilometers, empty if the index has no garages
+     */
+    public Optional<NearestGarage> nearest(double latitude, double longitude) {
+        if (garages.length == 0) {
+            return Optional.empty();
+        }
+        Search search = new Search(latitude, longitude);
+        search(search, 0, garages.length, 0);
+        return Optional.of(new NearestGarage(garages[search.bestIndex], search.bestDistance));
+    }
+
+    private void search(Search search, int from, int to, int depth) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+
+        double distance = soapUtils.calculateDistance(search.latitude, search.longitude, latitudes[mid], longitudes[mid]);
+        if (distance < search.bestDistance) {
+            search.bestDistance = distance;
+            search.bestIndex = mid;
+        }
+
+        boolean splitOnLatitude = depth % 2 == 0;
+        double delta = splitOnLatitude ? search.latitude - latitudes[mid] : search.longitude - longitudes[mid];
+
+        if (delta < 0) {
+            search(search, from, mid, depth + 1);
+            if (lowerBound(search, delta, splitOnLatitude) < search.bestDistance) {
+                search(search, mid + 1, to, depth + 1);
+            }
+        } else {
+            search(search, mid + 1, to, depth + 1);
+            if (lowerBound(search, delta, splitOnLatitude) < search.bestDistance) {
+                search(search, from, mid, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Shortest possible distance from the query point to anything on the other side of a split:
+     * the arc to a parallel for latitude splits, the distance to the meridian's great circle for longitude splits
+     */
+    private static double lowerBound(Search search, double delta, boolean splitOnLatitude) {
+        if (splitOnLatitude) {
+            return EARTH_RADIUS_KM * Math.abs(Math.toRadians(delta));
+        }
+        double sine = Math.cos(Math.toRadians(search.latitude)) * Math.abs(Math.sin(Math.toRadians(delta)));
+        return EARTH_RADIUS_KM * Math.asin(Math.min(1.0, sine));
+    }
+
+    private static void build(GarageNode[] nodes, int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        Comparator<GarageNode> axis = depth % 2 == 0
+                ? Comparator.comparingDouble(node -> node.latitude)
+                : Comparator.comparingDouble(node -> node.longitude);
+        Arrays.sort(nodes, from, to, axis);
+
+        int mid = (from + to) >>> 1;
+        build(nodes, from, mid, depth + 1);
+        build(nodes, mid + 1, to, depth + 1);
+    }
+
+    @Value
+    public static class NearestGarage {
+        Garage garage;
+        double distance;
+    }
+
+    private static final class Search {
+        private final double latitude;
+        private final double longitude;
+        private double bestDistance = Double.MAX_VALUE;
+        private int bestIndex = -1;
+
+        private Search(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private static final class GarageNode {
+        private final Garage garage;
+        private final double latitude;
+        private final double longitude;
+
+        private GarageNode(Garage garage, double latitude, double longitude) {
+            this.garage = garage;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        private static GarageNode parse(Garage garage) {
+            if (garage.getCoordinate() == null) {
+                return null;
+            }
+            String[] coordinates = garage.getCoordinate().split(",");
+            if (coordinates.length != 2) {
+                return null;
+            }
+            try {
+                return new GarageNode(garage, Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.iett.tracking.geo;
+
+/**
+ * Encoded polyline format (as used by Google Maps, Leaflet plugins and OSRM): coordinates rounded
+ * to five decimals, delta-encoded and written as base64-like ASCII, about 3-6 characters per point
+ */
+public final class Polyline {
+
+    private static final double PRECISION = 1e5;
+
+    private Polyline() {
+    }
+
+    /**
+     * Encode selected positions of a track
+     * @param track The track
+     * @param indices Indices of the positions to encode, in order
+     * @return The encoded polyline
+     */
+    public static String encode(PositionTrack track, int[] indices) {
+        StringBuilder encoded = new StringBuilder(indices.length * 8);
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (int index : indices) {
+            long latitude = Math.round(track.latitude(index) * PRECISION);
+            long longitude = Math.round(track.longitude(index) * PRECISION);
+            appendValue(encoded, latitude - previousLatitude);
+            appendValue(encoded, longitude - previousLongitude);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return encoded.toString();
+    }
+
+    private static void appendValue(StringBuilder encoded, long delta) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            encoded.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        encoded.append((char) (value + 63));
+    }
+}
@@ -0,0 +1,63 @@
+package com.iett.tracking.geo;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * The recorded positions of one vehicle in time order, held in primitive columns so that
+ * long windows can be simplified without an object per fix
+ */
+public final class PositionTrack {
+
+    private double[] latitudes = new double[64];
+    private double[] longitudes = new double[64];
+    private long[] times = new long[64];
+    private int size;
+
+    /**
+     * Append a position; positions must be added in time order
+     * @param latitude Latitude of the fix
+     * @param longitude Longitude of the fix
+     * @param time Time of the fix
+     */
+    public void add(double latitude, double longitude, LocalDateTime time) {
+        if (size == latitudes.length) {
+            latitudes = Arrays.copyOf(latitudes, size * 2);
+            longitudes = Arrays.copyOf(longitudes, size * 2);
+            times = Arrays.copyOf(times, size * 2);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        times[size] = time.toEpochSecond(ZoneOffset.UTC);
+        size++;
+    }
+
+    /**
+     * Drop every position after the first {@code size}
+     * @param size Number of positions to keep
+     */
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double latitude(int index) {
+        return latitudes[index];
+    }
+
+    public double longitude(int index) {
+        return longitudes[index];
+    }
+
+    public LocalDateTime time(int index) {
+        return LocalDateTime.ofEpochSecond(times[index], 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,152 @@
+package com.iett.tracking.metrics;
+
+import com.iett.tracking.fleet.FleetSnapshotStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation for the refresh pipelines. Every refresh is broken down into
+ * stages timed under {@code iett.refresh.stage}, so the Prometheus endpoint shows where refresh
+ * time goes, and the age of each dataset is exported for staleness alerts.
+ */
+@Component
+public class IngestMetrics {
+
+    public static final String BUS = "bus";
+    public static final String GARAGE = "garage";
+
+    public static final String STAGE_MAPPING = "mapping";
+    public static final String STAGE_NEAREST_GARAGE = "nearest_garage";
+    public static final String STAGE_DB_WRITE = "db_write";
+    public static final String STAGE_SNAPSHOT_PUBLISH = "snapshot_publish";
+    public static final String STAGE_HISTORY_WRITE = "history_write";
+    public static final String STAGE_INDEX_BUILD = "index_build";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicLong> lastSuccessMillis = new ConcurrentHashMap<>();
+
+    public IngestMetrics(MeterRegistry registry, FleetSnapshotStore fleetSnapshotStore) {
+        this.registry = registry;
+
+        Gauge.builder("iett.fleet.size", fleetSnapshotStore, store -> store.current().size())
+                .description("Number of buses in the snapshot being served")
+                .register(registry);
+        registerDataAge(BUS);
+        registerDataAge(GARAGE);
+    }
+
+    /**
+     * Time one stage of a refresh
+     * @param dataset The dataset being refreshed, {@link #BUS} or {@link #GARAGE}
+     * @param stage The stage name
+     * @param stageWork The work to time
+     * @return What the work returned
+     * @param <T> The result type
+     */
+    public <T> T timeStage(String dataset, String stage, Supplier<T> stageWork) {
+        return stageTimer(dataset, stage).record(stageWork);
+    }
+
+    /**
+     * Time one stage of a refresh
+     * @param dataset The dataset being refreshed, {@link #BUS} or {@link #GARAGE}
+     * @param stage The stage name
+     * @param stageWork The work to time
+     */
+    public void timeStage(String dataset, String stage, Runnable stageWork) {
+        stageTimer(dataset, stage).record(stageWork);
+    }
+
+    /**
+     * Record a stage whose time was accumulated by the caller, e.g. work spread over a streamed decode
+     * @param dataset The dataset being refreshed
+     * @param stage The stage name
+     * @param nanos Total time spent in the stage
+     */
+    public void recordStage(String dataset, String stage, long nanos) {
+        stageTimer(dataset, stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the outcome of a whole refresh; a success also resets the data age
+     * @param dataset The dataset that was refreshed
+     * @param success Whether fresh data was fetched and stored
+     * @param nanos Duration of the refresh
+     */
+    public void recordRefresh(String dataset, boolean success, long nanos) {
+        Timer.builder("iett.refresh.duration")
+                .description("Duration of a complete refresh")
+                .tag("dataset", dataset)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("iett.refresh.results")
+                .description("Refreshes by outcome")
+                .tag("dataset", dataset)
+                .tag("outcome", success ? "success" : "failure")
+                .register(registry)
+                .increment();
+        if (success) {
+            lastSuccessMillis.get(dataset).set(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Set the data age from a successful retrieval that happened before this process started
+     * @param dataset The dataset
+     * @param retrievalTime When the stored data was retrieved
+     */
+    public void recordStoredRetrieval(String dataset, LocalDateTime retrievalTime) {
+        long millis = retrievalTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        lastSuccessMillis.get(dataset).accumulateAndGet(millis, Math::max);
+    }
+
+    /**
+     * Count a read of a dataset. It is a hit when the data served is no older than the refresh interval,
+     * i.e. a read that would not have needed a SOAP fetch back when reads refreshed the data themselves.
+     * @param dataset The dataset read
+     * @param refreshIntervalSeconds The refresh interval of the dataset
+     */
+    public void recordRead(String dataset, long refreshIntervalSeconds) {
+        double age = dataAgeSeconds(dataset);
+        boolean hit = !Double.isNaN(age) && age <= refreshIntervalSeconds;
+        Counter.builder("iett.cache.requests")
+                .description("Dataset reads by whether the data served was within its refresh interval")
+                .tag("dataset", dataset)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    private Timer stageTimer(String dataset, String stage) {
+        return Timer.builder("iett.refresh.stage")
+                .description("Time spent in each stage of a refresh")
+                .tag("dataset", dataset)
+                .tag("stage", stage)
+                .register(registry);
+    }
+
+    private void registerDataAge(String dataset) {
+        lastSuccessMillis.put(dataset, new AtomicLong());
+        Gauge.builder("iett.data.age", () -> dataAgeSeconds(dataset))
+                .description("Seconds since the last successful retrieval, NaN if there has been none")
+                .tag("dataset", dataset)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private double dataAgeSeconds(String dataset) {
+        long last = lastSuccessMillis.get(dataset).get();
+        return last > 0 ? (System.currentTimeMillis() - last) / 1000.0 : Double.NaN;
+    }
+}
@@ -1,6 +1,7 @@
 package com.iett.tracking.model;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
@@ -27,13 +28,16 @@ public class Bus {
     @Column(name = "door_number")
     private String doorNumber;
     
-    @Column(name = "operator")
+    @Column(name = "operator_id")
+    @Convert(converter = BusLabelConverter.class)
     private String operator;
     
-    @Column(name = "garage")
+    @Column(name = "garage_id")
+    @Convert(converter = BusLabelConverter.class)
     private String garage;
     
-    @Column(name = "garage_code")
+    @Column(name = "garage_code_id")
+    @Convert(converter = BusLabelConverter.class)
     private String garageCode;
     
     @Column(name = "latitude")
@@ -60,10 +64,12 @@ public class Bus {
     @Column(name = "last_updated")
     private LocalDateTime lastUpdated;
     
-    @Column(name = "nearest_garage_code")
+    @Column(name = "nearest_garage_code_id")
+    @Convert(converter = BusLabelConverter.class)
     private String nearestGarageCode;
     
-    @Column(name = "nearest_garage_name")
+    @Column(name = "nearest_garage_name_id")
+    @Convert(converter = BusLabelConverter.class)
     private String nearestGarageName;
     
     @Column(name = "distance_to_nearest_garage")
@@ -0,0 +1,33 @@
+package com.iett.tracking.model;
+
+import com.iett.tracking.repository.BusLabelRepository;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores a bus label (operator, garage code or garage name) as its key in {@code bus_labels}
+ * and reads it back as the shared string instance
+ */
+@Component
+@Converter
+public class BusLabelConverter implements AttributeConverter<String, Integer> {
+
+    private final BusLabelRepository busLabelRepository;
+
+    // Lazy, because the repository needs the transaction manager, which needs the entity manager factory this converter is part of
+    public BusLabelConverter(@Lazy BusLabelRepository busLabelRepository) {
+        this.busLabelRepository = busLabelRepository;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String attribute) {
+        return busLabelRepository.idOf(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer dbData) {
+        return busLabelRepository.valueOf(dbData);
+    }
+}
@@ -0,0 +1,172 @@
+package com.iett.tracking.repository;
+
+import com.iett.tracking.fleet.FleetDiff;
+import com.iett.tracking.model.Bus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk writer for the bus ingest path. Applies a {@link FleetDiff} with multi-row
+ * {@code INSERT ... ON CONFLICT} statements for added and changed buses and a single
+ * {@code DELETE} for buses that disappeared, all in one transaction so readers never
+ * see a half-written or empty table. Label columns are written as keys from
+ * {@link BusLabelRepository}; labels first seen in this batch are stored up front.
+ */
+@Repository
+@Slf4j
+public class BusBulkWriter {
+
+    private static final String[] COLUMNS = {
+            "id", "door_no", "door_number", "operator_id", "garage_id", "garage_code_id",
+            "latitude", "longitude", "coordinate", "speed", "license_plate",
+            "time", "record_time", "last_updated",
+            "nearest_garage_code_id", "nearest_garage_name_id", "distance_to_nearest_garage"
+    };
+
+    // Keeps each statement well below PostgreSQL's 65535 bind parameter limit
+    private static final int ROWS_PER_STATEMENT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BusLabelRepository busLabelRepository;
+
+    public BusBulkWriter(JdbcTemplate jdbcTemplate, BusLabelRepository busLabelRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.busLabelRepository = busLabelRepository;
+    }
+
+    /**
+     * Write the difference to the buses table
+     * @param diff The difference between the stored and the freshly fetched fleet
+     */
+    @Transactional
+    public void apply(FleetDiff diff) {
+        List<Bus> upserts = diff.getUpserts();
+        busLabelRepository.resolve(labelsOf(upserts));
+        for (int start = 0; start < upserts.size(); start += ROWS_PER_STATEMENT) {
+            upsert(upserts.subList(start, Math.min(start + ROWS_PER_STATEMENT, upserts.size())));
+        }
+
+        int deleted = deleteAllExcept(diff.getBuses());
+
+        log.info("Bus ingest: {} added, {} changed, {} unchanged, {} deleted",
+                diff.getAdded().size(), diff.getChanged().size(), diff.getUnchangedCount(), deleted);
+    }
+
+    private void upsert(List<Bus> buses) {
+        String sql = buildUpsertSql(buses.size());
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            int index = 1;
+            for (Bus bus : buses) {
+                ps.setInt(index++, bus.getId());
+                setString(ps, index++, bus.getDoorNo());
+                setString(ps, index++, bus.getDoorNumber());
+                setLabel(ps, index++, bus.getOperator());
+                setLabel(ps, index++, bus.getGarage());
+                setLabel(ps, index++, bus.getGarageCode());
+                setDouble(ps, index++, bus.getLatitude());
+                setDouble(ps, index++, bus.getLongitude());
+                setString(ps, index++, bus.getCoordinate());
+                setDouble(ps, index++, bus.getSpeed());
+                setString(ps, index++, bus.getLicensePlate());
+                setTimestamp(ps, index++, bus.getTime());
+                setTimestamp(ps, index++, bus.getRecordTime());
+                setTimestamp(ps, index++, bus.getLastUpdated());
+                setLabel(ps, index++, bus.getNearestGarageCode());
+                setLabel(ps, index++, bus.getNearestGarageName());
+                setDouble(ps, index++, bus.getDistanceToNearestGarage());
+            }
+            return ps;
+        });
+    }
+
+    private static Set<String> labelsOf(List<Bus> buses) {
+        Set<String> labels = new HashSet<>();
+        for (Bus bus : buses) {
+            labels.add(bus.getOperator());
+            labels.add(bus.getGarage());
+            labels.add(bus.getGarageCode());
+            labels.add(bus.getNearestGarageCode());
+            labels.add(bus.getNearestGarageName());
+        }
+        labels.remove(null);
+        return labels;
+    }
+
+    private int deleteAllExcept(List<Bus> buses) {
+        Integer[] ids = buses.stream().map(Bus::getId).toArray(Integer[]::new);
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("DELETE FROM buses WHERE id <> ALL(?)");
+            Array array = connection.createArrayOf("integer", ids);
+            ps.setArray(1, array);
+            return ps;
+        });
+    }
+
+    private static String buildUpsertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO buses (")
+                .append(String.join(", ", COLUMNS))
+                .append(") VALUES ");
+
+        String placeholders = "(" + "?, ".repeat(COLUMNS.length - 1) + "?)";
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(placeholders);
+        }
+
+        sql.append(" ON CONFLICT (id) DO UPDATE SET ");
+        for (int i = 1; i < COLUMNS.length; i++) {
+            if (i > 1) {
+                sql.append(", ");
+            }
+            sql.append(COLUMNS[i]).append(" = EXCLUDED.").append(COLUMNS[i]);
+        }
+        return sql.toString();
+    }
+
+    private static void setString(PreparedStatement ps, int index, String value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    private void setLabel(PreparedStatement ps, int index, String value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, busLabelRepository.idOf(value));
+        }
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement ps, int index, LocalDateTime value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+        } else {
+            ps.setTimestamp(index, Timestamp.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.iett.tracking.repository;
+
+import com.iett.tracking.fleet.StringDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the low-cardinality bus strings: operators, garage codes and nearest-garage names.
+ * The {@code buses} table stores them as keys into {@code bus_labels}, and the in-memory side
+ * hands out one shared instance per distinct string, so a refresh of thousands of buses holds
+ * each operator name once. The dictionary is the only place labels are kept; database keys are
+ * cached against its codes, so a label always has one code and at most one key. Labels are never deleted.
+ */
+@Repository
+@Slf4j
+public class BusLabelRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final StringDictionary dictionary = new StringDictionary();
+    private final DatabaseKeys databaseKeys = new DatabaseKeys();
+    private volatile boolean loaded;
+
+    public BusLabelRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        // New labels are committed on their own, so a rolled back bus write never leaves cached ids behind
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * The in-memory dictionary behind {@link #intern(String)}, shared with the fleet snapshots
+     * @return The dictionary
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the shared instance of a string, without touching the database
+     * @param value The string, may be null
+     * @return An equal string that is shared by every caller, or null
+     */
+    public String intern(String value) {
+        return value == null ? null : dictionary.decode(dictionary.encode(value));
+    }
+
+    /**
+     * Get the database key of a label, storing the label if it is new
+     * @param value The label, may be null
+     * @return The key, or null for null
+     */
+    public Integer idOf(String value) {
+        if (value == null) {
+            return null;
+        }
+        Integer id = databaseKeys.idOf(dictionary.codeOf(value));
+        if (id == null) {
+            resolve(Set.of(value));
+            id = databaseKeys.idOf(dictionary.codeOf(value));
+        }
+        return id;
+    }
+
+    /**
+     * Get the label behind a database key
+     * @param id The key, may be null
+     * @return The label, or null for null
+     * @throws IllegalStateException If no label has that key
+     */
+    public String valueOf(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        Integer code = databaseKeys.codeOf(id);
+        if (code == null) {
+            // Another instance may have added labels since they were last loaded
+            loadAll();
+            code = databaseKeys.codeOf(id);
+            if (code == null) {
+                throw new IllegalStateException("Unknown bus label id " + id);
+            }
+        }
+        return dictionary.decode(code);
+    }
+
+    /**
+     * Make sure every label has a database key, storing the new ones with a single statement
+     * @param values The labels; nulls are ignored
+     */
+    public void resolve(Collection<String> values) {
+        if (!loaded) {
+            loadAll();
+        }
+        Set<String> missing = new LinkedHashSet<>();
+        for (String value : values) {
+            if (value != null && databaseKeys.idOf(dictionary.codeOf(value)) == null) {
+                missing.add(value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        String[] array = missing.toArray(String[]::new);
+        newTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO bus_labels (value) SELECT unnest(?) ON CONFLICT (value) DO NOTHING");
+                Array labels = connection.createArrayOf("varchar", array);
+                ps.setArray(1, labels);
+                return ps;
+            });
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement("SELECT id, value FROM bus_labels WHERE value = ANY(?)");
+                Array labels = connection.createArrayOf("varchar", array);
+                ps.setArray(1, labels);
+                return ps;
+            }, rs -> {
+                cache(rs.getInt("id"), rs.getString("value"));
+            });
+        });
+        log.debug("Stored {} new bus labels", missing.size());
+    }
+
+    private void loadAll() {
+        jdbcTemplate.query("SELECT id, value FROM bus_labels", rs -> {
+            cache(rs.getInt("id"), rs.getString("value"));
+        });
+        loaded = true;
+    }
+
+    private void cache(int id, String value) {
+        databaseKeys.put(dictionary.encode(value), id);
+    }
+
+    /**
+     * Database keys by dictionary code and back, always updated together
+     */
+    private static final class DatabaseKeys {
+
+        private final Map<Integer, Integer> idsByCode = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> codesById = new ConcurrentHashMap<>();
+
+        Integer idOf(int code) {
+            return idsByCode.get(code);
+        }
+
+        Integer codeOf(int id) {
+            return codesById.get(id);
+        }
+
+        synchronized void put(int code, int id) {
+            // Publish the code before the key, so whoever finds the key can also map it back
+            codesById.put(id, code);
+            idsByCode.put(code, id);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.iett.tracking.repository;
+
+import com.iett.tracking.dto.BusPositionDTO;
+import com.iett.tracking.fleet.FleetSnapshot;
+import com.iett.tracking.geo.PositionTrack;
+import com.iett.tracking.model.Bus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Append-only store of past bus positions in the {@code bus_positions} table.
+ * The table is range-partitioned by day on {@code record_time}, so retention
+ * drops whole partitions instead of deleting rows. The parent table and its default
+ * partition come from the V2 migration; daily partitions are managed here.
+ */
+@Repository
+public class BusPositionRepository {
+
+    public static final String PARTITION_PREFIX = "bus_positions_p";
+    public static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final int ROWS_PER_STATEMENT = 2000;
+
+    private static final RowMapper<BusPositionDTO> POSITION_MAPPER = (rs, rowNum) -> BusPositionDTO.builder()
+            .busId(rs.getInt("bus_id"))
+            .doorNo(rs.getString("door_number"))
+            .latitude(rs.getDouble("latitude"))
+            .longitude(rs.getDouble("longitude"))
+            .speed((Double) rs.getObject("speed"))
+            .recordTime(rs.getTimestamp("record_time").toLocalDateTime())
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BusPositionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Create the partition holding the given day if it does not exist
+     * @param day The day
+     */
+    public void createPartition(LocalDate day) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day) +
+                " PARTITION OF bus_positions FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+    }
+
+    /**
+     * List the daily partitions that currently exist
+     * @return Partition table names
+     */
+    public List<String> findPartitionNames() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = 'bus_positions' AND c.relname LIKE '" + PARTITION_PREFIX + "%'",
+                String.class);
+    }
+
+    /**
+     * Drop a daily partition and every position in it
+     * @param partitionName The partition table name, as returned by {@link #findPartitionNames()}
+     */
+    public void dropPartition(String partitionName) {
+        if (!partitionName.matches(PARTITION_PREFIX + "\\d{8}")) {
+            throw new IllegalArgumentException("Not a bus_positions partition: " + partitionName);
+        }
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName);
+    }
+
+    /**
+     * Append the current positions of the given buses; positions already stored for the same
+     * vehicle and record time are skipped
+     * @param buses Buses with coordinates and a record time
+     * @return The number of positions written
+     */
+    public int appendAll(List<Bus> buses) {
+        int written = 0;
+        for (int start = 0; start < buses.size(); start += ROWS_PER_STATEMENT) {
+            written += append(buses.subList(start, Math.min(start + ROWS_PER_STATEMENT, buses.size())));
+        }
+        return written;
+    }
+
+    /**
+     * Find the positions of a bus within a time window, oldest first
+     * @param doorNumber The door number of the bus
+     * @param from Start of the window, inclusive
+     * @param to End of the window, exclusive
+     * @param limit Maximum number of positions to return
+     * @return The positions
+     */
+    public List<BusPositionDTO> findByDoorNumber(String doorNumber, LocalDateTime from, LocalDateTime to, int limit) {
+        return jdbcTemplate.query(
+                "SELECT bus_id, door_number, record_time, latitude, longitude, speed FROM bus_positions " +
+                "WHERE door_number = ? AND record_time >= ? AND record_time < ? " +
+                "ORDER BY record_time LIMIT ?",
+                POSITION_MAPPER, doorNumber, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+    }
+
+    /**
+     * Read the track of a bus within a time window, oldest first. Served by the
+     * {@code (bus_id, record_time)} primary key of each daily partition.
+     * @param busId The bus id
+     * @param from Start of the window, inclusive
+     * @param to End of the window, exclusive
+     * @param limit Maximum number of positions to read
+     * @return The positions
+     */
+    public PositionTrack findTrack(int busId, LocalDateTime from, LocalDateTime to, int limit) {
+        PositionTrack track = new PositionTrack();
+        jdbcTemplate.query(
+                "SELECT record_time, latitude, longitude FROM bus_positions " +
+                "WHERE bus_id = ? AND record_time >= ? AND record_time < ? " +
+                "ORDER BY record_time LIMIT ?",
+                rs -> {
+                    track.add(rs.getDouble("latitude"), rs.getDouble("longitude"),
+                            rs.getTimestamp("record_time").toLocalDateTime());
+                },
+                busId, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+        return track;
+    }
+
+    public static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+
+    private int append(List<Bus> buses) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO bus_positions (bus_id, door_number, record_time, latitude, longitude, speed) VALUES ");
+        for (int i = 0; i < buses.size(); i++) {
+            sql.append(i > 0 ? ", " : "").append("(?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(" ON CONFLICT DO NOTHING");
+
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString());
+            int index = 1;
+            for (Bus bus : buses) {
+                ps.setInt(index++, bus.getId());
+                String doorNumber = FleetSnapshot.doorNumberOf(bus);
+                if (doorNumber == null) {
+                    ps.setNull(index++, Types.VARCHAR);
+                } else {
+                    ps.setString(index++, doorNumber);
+                }
+                ps.setTimestamp(index++, Timestamp.valueOf(bus.getRecordTime()));
+                ps.setDouble(index++, bus.getLatitude());
+                ps.setDouble(index++, bus.getLongitude());
+                if (bus.getSpeed() == null) {
+                    ps.setNull(index++, Types.DOUBLE);
+                } else {
+                    ps.setDouble(index++, bus.getSpeed());
+                }
+            }
+            return ps;
+        });
+    }
+}
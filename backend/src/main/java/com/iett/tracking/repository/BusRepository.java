@@ -1,23 +1,36 @@
 package com.iett.tracking.repository;
 
 import com.iett.tracking.model.Bus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface BusRepository extends JpaRepository<Bus, Integer> {
 
-    @Query("SELECT b FROM Bus b WHERE " +
-            "LOWER(b.operator) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-            "LOWER(b.garageCode) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-            "LOWER(b.doorNumber) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-            "LOWER(b.licensePlate) LIKE LOWER(CONCAT('%', :searchTerm, '%'))")
-    List<Bus> findBySearchTerm(@Param("searchTerm") String searchTerm);
+    String MATCHING_LABELS = "(SELECT l.id FROM bus_labels l WHERE LOWER(l.value) LIKE LOWER(CONCAT('%', :searchTerm, '%')))";
+
+    String SEARCH_PREDICATE = "b.operator_id IN " + MATCHING_LABELS + " OR " +
+            "b.garage_code_id IN " + MATCHING_LABELS + " OR " +
+            "LOWER(b.door_number) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+            "LOWER(b.license_plate) LIKE LOWER(CONCAT('%', :searchTerm, '%'))";
+
+    /**
+     * Find buses whose operator, garage code, door number or license plate contains the term, ignoring case.
+     * Operators and garage codes are matched in {@code bus_labels} first and then compared by key.
+     * @param searchTerm The search term
+     * @param pageable The page to return; results are always ordered by door number and id
+     * @return One page of matching buses
+     */
+    @Query(value = "SELECT b.* FROM buses b WHERE " + SEARCH_PREDICATE + " ORDER BY b.door_number, b.id",
+            countQuery = "SELECT COUNT(*) FROM buses b WHERE " + SEARCH_PREDICATE,
+            nativeQuery = true)
+    Page<Bus> findBySearchTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
     
     Optional<Bus> findByDoorNumber(String doorNumber);
 } 
\ No newline at end of file
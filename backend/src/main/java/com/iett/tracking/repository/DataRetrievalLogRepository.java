@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Optional;
 
 @Repository
 public interface DataRetrievalLogRepository extends JpaRepository<DataRetrievalLog, Long> {
@@ -29,4 +30,11 @@ public interface DataRetrievalLogRepository extends JpaRepository<DataRetrievalL
      */
     @Query("SELECT l FROM DataRetrievalLog l WHERE l.dataType = :dataType ORDER BY l.retrievalTime DESC")
     DataRetrievalLog findMostRecent(@Param("dataType") DataRetrievalLog.DataType dataType);
+    
+    /**
+     * Find the most recent successful retrieval for the given data type
+     * @param dataType The data type to find
+     * @return The most recent successful retrieval log, empty if there is none
+     */
+    Optional<DataRetrievalLog> findFirstByDataTypeAndSuccessTrueOrderByRetrievalTimeDesc(DataRetrievalLog.DataType dataType);
 } 
\ No newline at end of file
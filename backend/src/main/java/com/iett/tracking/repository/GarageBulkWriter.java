@@ -0,0 +1,58 @@
+package com.iett.tracking.repository;
+
+import com.iett.tracking.model.Garage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Replaces the garages table with the garages from the SOAP service in one transaction, keeping
+ * their upstream ids. JPA would ignore the ids because the key is database-generated, so the
+ * rows are written with plain JDBC; the key sequence is moved past them so garages created
+ * through the API still get free ids.
+ */
+@Repository
+@Slf4j
+public class GarageBulkWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final GarageRepository garageRepository;
+
+    public GarageBulkWriter(JdbcTemplate jdbcTemplate, GarageRepository garageRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.garageRepository = garageRepository;
+    }
+
+    /**
+     * Replace every stored garage
+     * @param garages The complete set of garages; those without an id get a generated one
+     * @return The stored garages
+     */
+    @Transactional
+    public List<Garage> replaceAll(List<Garage> garages) {
+        jdbcTemplate.update("DELETE FROM garages");
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO garages (id, garage_name, garage_code, coordinate, last_updated) " +
+                        "VALUES (COALESCE(?, nextval(pg_get_serial_sequence('garages', 'id'))), ?, ?, ?, ?)",
+                garages, garages.size(), (ps, garage) -> {
+                    if (garage.getId() != null) {
+                        ps.setLong(1, garage.getId());
+                    } else {
+                        ps.setNull(1, Types.BIGINT);
+                    }
+                    ps.setString(2, garage.getGarageName());
+                    ps.setString(3, garage.getGarageCode());
+                    ps.setString(4, garage.getCoordinate());
+                    ps.setTimestamp(5, garage.getLastUpdated() != null ? Timestamp.valueOf(garage.getLastUpdated()) : null);
+                });
+        jdbcTemplate.execute("SELECT setval(pg_get_serial_sequence('garages', 'id'), " +
+                "GREATEST((SELECT COALESCE(MAX(id), 0) FROM garages), 1))");
+        log.debug("Replaced garages table with {} garages", garages.size());
+        return garageRepository.findAll();
+    }
+}
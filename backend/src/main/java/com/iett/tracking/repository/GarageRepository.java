@@ -1,6 +1,8 @@
 package com.iett.tracking.repository;
 
 import com.iett.tracking.model.Garage;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -11,9 +13,22 @@ import java.util.List;
 @Repository
 public interface GarageRepository extends JpaRepository<Garage, Long> {
 
-    @Query("SELECT g FROM Garage g WHERE " +
+    /**
+     * Find garages whose name or code contains the term, ignoring case, or whose id equals the given id
+     * @param searchTerm The search term
+     * @param id Id to match exactly; pass a non-existent id such as -1 when the term is not a number
+     * @param pageable The page to return
+     * @return One page of matching garages
+     */
+    @Query(value = "SELECT g FROM Garage g WHERE " +
             "LOWER(g.garageName) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
             "LOWER(g.garageCode) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-            "CAST(g.id AS string) LIKE CONCAT('%', :searchTerm, '%')")
-    List<Garage> findBySearchTerm(@Param("searchTerm") String searchTerm);
+            "g.id = :id",
+            countQuery = "SELECT COUNT(g) FROM Garage g WHERE " +
+            "LOWER(g.garageName) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+            "LOWER(g.garageCode) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+            "g.id = :id")
+    Page<Garage> findBySearchTerm(@Param("searchTerm") String searchTerm, @Param("id") Long id, Pageable pageable);
+
+    List<Garage> findByIdGreaterThan(Long id, Pageable pageable);
 } 
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.iett.tracking.service;
+
+import com.iett.tracking.dto.BusPositionDTO;
+import com.iett.tracking.dto.TrajectoryDTO;
+import com.iett.tracking.geo.DouglasPeucker;
+import com.iett.tracking.geo.Polyline;
+import com.iett.tracking.geo.PositionTrack;
+import com.iett.tracking.model.Bus;
+import com.iett.tracking.repository.BusPositionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records a trajectory for every bus by appending each new position to the
+ * day-partitioned {@code bus_positions} table, and enforces time-based retention
+ * by dropping whole partitions.
+ */
+@Service
+@Slf4j
+public class BusPositionHistoryService {
+
+    private final BusPositionRepository busPositionRepository;
+    private final Set<LocalDate> knownPartitions = ConcurrentHashMap.newKeySet();
+
+    // Positions are keyed on IETT local times, so days start and end in the same zone
+    @Value("${iett.soap.time-zone}")
+    private ZoneId timeZone;
+
+    @Value("${iett.history.retention-days}")
+    private int retentionDays;
+
+    @Value("${iett.history.max-query-rows}")
+    private int maxQueryRows;
+
+    @Value("${iett.history.trajectory-max-source-points}")
+    private int maxTrajectorySourcePoints;
+
+    @Value("${iett.history.trajectory-max-points}")
+    private int maxTrajectoryPoints;
+
+    public BusPositionHistoryService(BusPositionRepository busPositionRepository) {
+        this.busPositionRepository = busPositionRepository;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        LocalDate today = LocalDate.now(timeZone);
+        ensurePartition(today);
+        ensurePartition(today.plusDays(1));
+        dropExpiredPartitions();
+    }
+
+    /**
+     * Append the positions of buses that were added or changed in the latest refresh.
+     * Positions outside the retention window are skipped.
+     * @param buses Added and changed buses
+     * @return The number of positions written
+     */
+    public int record(List<Bus> buses) {
+        LocalDateTime oldest = LocalDate.now(timeZone).minusDays(retentionDays).atStartOfDay();
+        LocalDateTime newest = LocalDate.now(timeZone).plusDays(2).atStartOfDay();
+
+        List<Bus> positions = new ArrayList<>(buses.size());
+        for (Bus bus : buses) {
+            LocalDateTime recordTime = bus.getRecordTime();
+            if (bus.getId() == null || bus.getLatitude() == null || bus.getLongitude() == null || recordTime == null) {
+                continue;
+            }
+            if (recordTime.isBefore(oldest) || !recordTime.isBefore(newest)) {
+                continue;
+            }
+            ensurePartition(recordTime.toLocalDate());
+            positions.add(bus);
+        }
+
+        if (positions.isEmpty()) {
+            return 0;
+        }
+        int written = busPositionRepository.appendAll(positions);
+        log.debug("Appended {} bus positions to history", written);
+        return written;
+    }
+
+    /**
+     * Get the positions of a bus within a time window, oldest first
+     * @param doorNumber The door number of the bus
+     * @param from Start of the window, inclusive
+     * @param to End of the window, exclusive
+     * @return At most {@code iett.history.max-query-rows} positions
+     */
+    public List<BusPositionDTO> findPositions(String doorNumber, LocalDateTime from, LocalDateTime to) {
+        return busPositionRepository.findByDoorNumber(doorNumber, from, to, maxQueryRows);
+    }
+
+    /**
+     * Get the path of a bus within a time window, simplified with Douglas-Peucker and encoded as a polyline.
+     * The path has at most {@code iett.history.trajectory-max-points} points whatever the window length;
+     * when the requested tolerance leaves more, the tolerance is raised until they fit.
+     * @param busId The bus id
+     * @param from Start of the window, inclusive
+     * @param to End of the window, exclusive
+     * @param toleranceMeters Maximum distance of a dropped position from the simplified path, in meters
+     * @return The simplified path
+     */
+    public TrajectoryDTO findTrajectory(int busId, LocalDateTime from, LocalDateTime to, double toleranceMeters) {
+        // One extra row tells whether the window held more positions than are read
+        PositionTrack track = busPositionRepository.findTrack(busId, from, to, maxTrajectorySourcePoints + 1);
+        boolean truncated = track.size() > maxTrajectorySourcePoints;
+        if (truncated) {
+            track.truncate(maxTrajectorySourcePoints);
+        }
+
+        DouglasPeucker.Simplified simplified = DouglasPeucker.simplify(track, toleranceMeters, maxTrajectoryPoints);
+        int[] indices = simplified.getIndices();
+
+        return TrajectoryDTO.builder()
+                .busId(busId)
+                .from(from)
+                .to(to)
+                .startTime(indices.length > 0 ? track.time(indices[0]) : null)
+                .endTime(indices.length > 0 ? track.time(indices[indices.length - 1]) : null)
+                .polyline(Polyline.encode(track, indices))
+                .pointCount(indices.length)
+                .sourcePointCount(track.size())
+                .toleranceMeters(simplified.getToleranceMeters())
+                .truncated(truncated)
+                .build();
+    }
+
+    /**
+     * Create tomorrow's partition ahead of time and drop partitions that fell out of the retention window
+     */
+    @Scheduled(cron = "${iett.history.maintenance-cron}")
+    public void maintainPartitions() {
+        ensurePartition(LocalDate.now(timeZone).plusDays(1));
+        dropExpiredPartitions();
+    }
+
+    private void ensurePartition(LocalDate day) {
+        if (!knownPartitions.contains(day)) {
+            busPositionRepository.createPartition(day);
+            knownPartitions.add(day);
+        }
+    }
+
+    private void dropExpiredPartitions() {
+        LocalDate cutoff = LocalDate.now(timeZone).minusDays(retentionDays);
+        for (String partition : busPositionRepository.findPartitionNames()) {
+            LocalDate day;
+            try {
+                day = LocalDate.parse(partition.substring(BusPositionRepository.PARTITION_PREFIX.length()),
+                        BusPositionRepository.PARTITION_SUFFIX);
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            if (day.isBefore(cutoff)) {
+                busPositionRepository.dropPartition(partition);
+                knownPartitions.remove(day);
+                log.info("Dropped bus position partition {}", partition);
+            }
+        }
+    }
+}
@@ -1,40 +1,44 @@
 package com.iett.tracking.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.fleet.FleetChangeLog;
+import com.iett.tracking.fleet.FleetDiff;
+import com.iett.tracking.fleet.FleetSnapshot;
+import com.iett.tracking.fleet.FleetSnapshotStore;
+import com.iett.tracking.geo.GarageLocator;
+import com.iett.tracking.geo.GarageSpatialIndex;
+import com.iett.tracking.metrics.IngestMetrics;
 import com.iett.tracking.model.Bus;
 import com.iett.tracking.model.DataRetrievalLog;
-import com.iett.tracking.model.Garage;
+import com.iett.tracking.repository.BusBulkWriter;
+import com.iett.tracking.repository.BusLabelRepository;
 import com.iett.tracking.repository.BusRepository;
 import com.iett.tracking.repository.DataRetrievalLogRepository;
-import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.util.SingleFlight;
 import com.iett.tracking.util.SoapUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONObject;
-import org.json.XML;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 @Slf4j
 public class BusSoapService {
     
-    private final RestTemplate restTemplate;
+    private final SoapTransport soapTransport;
     private final BusRepository busRepository;
-    private final GarageRepository garageRepository;
+    private final BusBulkWriter busBulkWriter;
+    private final GarageLocator garageLocator;
     private final DataRetrievalLogRepository dataRetrievalLogRepository;
     private final SoapUtils soapUtils;
+    private final FleetSnapshotStore fleetSnapshotStore;
+    private final BusPositionHistoryService busPositionHistoryService;
+    private final IngestMetrics ingestMetrics;
+    private final BusLabelRepository busLabelRepository;
     
     @Value("${iett.soap.bus-service-url}")
     private String serviceUrl;
@@ -42,116 +46,205 @@ public class BusSoapService {
     @Value("${iett.soap.bus-method}")
     private String methodName;
     
-    @Value("${iett.soap.data-cache-duration-minutes}")
-    private int cacheDurationMinutes;
+    @Value("${iett.refresh.bus-interval-seconds}")
+    private int refreshIntervalSeconds;
+    
+    private final SingleFlight refreshFlight = new SingleFlight();
     
     public BusSoapService(
-            RestTemplate restTemplate,
+            SoapTransport soapTransport,
             BusRepository busRepository,
-            GarageRepository garageRepository,
+            BusBulkWriter busBulkWriter,
+            GarageLocator garageLocator,
             DataRetrievalLogRepository dataRetrievalLogRepository,
-            SoapUtils soapUtils) {
-        this.restTemplate = restTemplate;
+            SoapUtils soapUtils,
+            FleetSnapshotStore fleetSnapshotStore,
+            BusPositionHistoryService busPositionHistoryService,
+            IngestMetrics ingestMetrics,
+            BusLabelRepository busLabelRepository) {
+        this.soapTransport = soapTransport;
         this.busRepository = busRepository;
-        this.garageRepository = garageRepository;
+        this.busBulkWriter = busBulkWriter;
+        this.garageLocator = garageLocator;
         this.dataRetrievalLogRepository = dataRetrievalLogRepository;
         this.soapUtils = soapUtils;
+        this.fleetSnapshotStore = fleetSnapshotStore;
+        this.busPositionHistoryService = busPositionHistoryService;
+        this.ingestMetrics = ingestMetrics;
+        this.busLabelRepository = busLabelRepository;
     }
     
-    public List<Bus> getBusData() {
-        boolean needsRefresh = needsDataRefresh();
-        
-        if (!needsRefresh) {
-            log.info("Using cached bus data from database");
-            return busRepository.findAll();
+    /**
+     * Get the fleet snapshot currently being served. Never blocks on the SOAP service or the database;
+     * keeping the snapshot fresh is the job of {@link DataRefreshScheduler}.
+     * @return The current fleet snapshot
+     */
+    public FleetSnapshot getFleetSnapshot() {
+        ingestMetrics.recordRead(IngestMetrics.BUS, refreshIntervalSeconds);
+        return fleetSnapshotStore.current();
+    }
+    
+    /**
+     * Get a recently published fleet snapshot by version
+     * @param version The snapshot version
+     * @return The snapshot, or empty if it is no longer retained
+     */
+    public Optional<FleetSnapshot> findFleetSnapshot(long version) {
+        return fleetSnapshotStore.find(version);
+    }
+    
+    /**
+     * Get what changed in the fleet since the given snapshot version
+     * @param sinceVersion The version the client currently has
+     * @return The net changes, or empty if the version is too old and the client needs the full fleet
+     */
+    public Optional<FleetChangeLog.FleetChanges> getFleetChangesSince(long sinceVersion) {
+        return fleetSnapshotStore.changesSince(sinceVersion);
+    }
+    
+    /**
+     * Refresh bus data from the SOAP service unless a refresh is already running
+     * @return True if this call performed the refresh, false if it was skipped
+     */
+    public boolean refresh() {
+        return refreshFlight.runIfIdle(this::doRefresh);
+    }
+    
+    /**
+     * Refresh bus data from the SOAP service now, or wait for the refresh that is already running
+     * @return The fleet snapshot after the refresh
+     */
+    public FleetSnapshot forceRefresh() {
+        refreshFlight.runOrJoin(() -> {
+            if (fleetSnapshotStore.current().getVersion() == 0) {
+                reloadFleetSnapshot();
+            }
+            fetchAndPublish();
+        });
+        return fleetSnapshotStore.current();
+    }
+    
+    /**
+     * Rebuild the fleet snapshot from the database, e.g. after buses were edited through the API
+     * @return The newly published snapshot
+     */
+    public FleetSnapshot reloadFleetSnapshot() {
+        log.info("Loading fleet snapshot from database");
+        return fleetSnapshotStore.publish(busRepository.findAll());
+    }
+    
+    private void doRefresh() {
+        // On the first run serve what the database already has, and skip the SOAP call
+        // entirely if that data is still within the refresh interval (e.g. after a restart)
+        if (fleetSnapshotStore.current().getVersion() == 0) {
+            reloadFleetSnapshot();
+            if (!needsDataRefresh()) {
+                log.info("Bus data in database is recent, skipping initial SOAP fetch");
+                recordStoredRetrieval();
+                return;
+            }
         }
-        
+        fetchAndPublish();
+    }
+    
+    private void fetchAndPublish() {
         log.info("Fetching fresh bus data from SOAP service");
-        List<SoapBusDTO> busData = fetchBusDataFromSoap();
-        
-        if (!busData.isEmpty()) {
-            updateBusDatabase(busData);
-            return busRepository.findAll();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<List<Bus>> fetched = fetchBusDataFromSoap();
+            
+            if (fetched.isPresent() && !fetched.get().isEmpty()) {
+                List<Bus> buses = fetched.get();
+                GarageSpatialIndex garageIndex = garageLocator.current();
+                ingestMetrics.timeStage(IngestMetrics.BUS, IngestMetrics.STAGE_NEAREST_GARAGE,
+                        () -> buses.forEach(bus -> assignNearestGarage(bus, garageIndex)));
+                
+                FleetDiff diff = FleetDiff.between(fleetSnapshotStore.current(), buses);
+                ingestMetrics.timeStage(IngestMetrics.BUS, IngestMetrics.STAGE_DB_WRITE, () -> busBulkWriter.apply(diff));
+                ingestMetrics.timeStage(IngestMetrics.BUS, IngestMetrics.STAGE_SNAPSHOT_PUBLISH, () -> fleetSnapshotStore.publish(diff));
+                recordHistory(diff);
+            }
+            success = fetched.isPresent();
+        } finally {
+            ingestMetrics.recordRefresh(IngestMetrics.BUS, success, System.nanoTime() - start);
+        }
+    }
+    
+    private void recordHistory(FleetDiff diff) {
+        // History is secondary to the live fleet, so a failure here must not fail the refresh
+        try {
+            ingestMetrics.timeStage(IngestMetrics.BUS, IngestMetrics.STAGE_HISTORY_WRITE,
+                    () -> busPositionHistoryService.record(diff.getUpserts()));
+        } catch (Exception e) {
+            log.error("Error recording bus position history: {}", e.getMessage(), e);
         }
-        
-        return busRepository.findAll();
     }
 
     private boolean needsDataRefresh() {
-        LocalDateTime threshold = LocalDateTime.now().minusMinutes(cacheDurationMinutes);
+        LocalDateTime threshold = LocalDateTime.now().minusSeconds(refreshIntervalSeconds);
         
         return !dataRetrievalLogRepository.existsRecentSuccessfulRetrieval(
                 DataRetrievalLog.DataType.BUS, threshold);
     }
     
+    private void recordStoredRetrieval() {
+        dataRetrievalLogRepository.findFirstByDataTypeAndSuccessTrueOrderByRetrievalTimeDesc(DataRetrievalLog.DataType.BUS)
+                .ifPresent(retrieval -> ingestMetrics.recordStoredRetrieval(IngestMetrics.BUS, retrieval.getRetrievalTime()));
+    }
+    
 
-    private List<SoapBusDTO> fetchBusDataFromSoap() {
+    /**
+     * Fetch bus positions from the SOAP service, mapping each record to an entity as soon as it is decoded
+     * @return The mapped buses, or empty if the request failed
+     */
+    private Optional<List<Bus>> fetchBusDataFromSoap() {
         try {
-            String soapRequest = 
-                    "<soap:Envelope xmlns:soap='http://schemas.xmlsoap.org/soap/envelope/'>" +
-                    "<soap:Body>" +
-                    "<" + methodName + " xmlns=\"http://tempuri.org/\" />" +
-                    "</soap:Body>" +
-                    "</soap:Envelope>";
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.TEXT_XML);
-            headers.set("SOAPAction", "http://tempuri.org/" + methodName);
-            
-            HttpEntity<String> request = new HttpEntity<>(soapRequest, headers);
-            
-            log.info("Sending SOAP request to {}", serviceUrl);
-            
-            String responseXml = restTemplate.postForObject(serviceUrl, request, String.class);
-            
-            JSONObject jsonObj = XML.toJSONObject(responseXml);
-            
-            JSONObject envelope = jsonObj.getJSONObject("soap:Envelope");
-            JSONObject body = envelope.getJSONObject("soap:Body");
-            JSONObject response = body.getJSONObject(methodName + "Response");
-            String jsonData = response.getString(methodName + "Result");
+            List<Bus> buses = new ArrayList<>();
+            long[] mappingNanos = new long[1];
+            soapTransport.call(serviceUrl, methodName, SoapBusDTO.class, dto -> {
+                long mappingStart = System.nanoTime();
+                buses.add(mapToBusEntity(dto));
+                mappingNanos[0] += System.nanoTime() - mappingStart;
+            });
+            ingestMetrics.recordStage(IngestMetrics.BUS, IngestMetrics.STAGE_MAPPING, mappingNanos[0]);
             
             logDataRetrieval(true, null);
             
-            return soapUtils.parseJsonToList(jsonData, new TypeReference<List<SoapBusDTO>>() {});
+            return Optional.of(buses);
         } catch (Exception e) {
             log.error("Error fetching bus data: {}", e.getMessage(), e);
             logDataRetrieval(false, e.getMessage());
-            return Collections.emptyList();
+            return Optional.empty();
         }
     }
     
-    private void updateBusDatabase(List<SoapBusDTO> busDTOs) {
-        busRepository.deleteAll();
-        
-        List<Garage> garages = garageRepository.findAll();
-        Map<String, Garage> garageMap = garages.stream()
-                .collect(Collectors.toMap(Garage::getGarageCode, Function.identity()));
-        
-        List<Bus> buses = busDTOs.stream()
-                .map(dto -> mapToBusEntity(dto, garageMap))
-                .collect(Collectors.toList());
-        
-        busRepository.saveAll(buses);
-        log.info("Saved {} buses to database", buses.size());
-    }
-    
-    private Bus mapToBusEntity(SoapBusDTO dto, Map<String, Garage> garageMap) {
+    // Package-private so the benchmarks module can measure it
+    Bus mapToBusEntity(SoapBusDTO dto) {
         Bus bus = new Bus();
         
         if (dto.getLicensePlate() != null && !dto.getLicensePlate().isEmpty()) {
             bus.setId(dto.getLicensePlate().hashCode());
             bus.setLicensePlate(dto.getLicensePlate());
         } else {
-            bus.setId((int) (Math.random() * 1000000));
+            // Key plate-less buses by door number so they keep the same id across refreshes
+            bus.setId(dto.getDoorNo() != null && !dto.getDoorNo().isEmpty()
+                    ? ("door:" + dto.getDoorNo()).hashCode()
+                    : (int) (Math.random() * 1000000));
             bus.setLicensePlate("Unknown");
         }
         
-        bus.setOperator(dto.getOperator());
-        bus.setGarageCode(dto.getGarage());
+        // Operators and garage codes repeat across the fleet, so every bus shares one instance of each
+        bus.setOperator(busLabelRepository.intern(dto.getOperator()));
+        bus.setGarageCode(busLabelRepository.intern(dto.getGarage()));
         bus.setDoorNumber(dto.getDoorNo());
         
-        bus.setRecordTime(soapUtils.parseTimeStringToDateTime(dto.getTime()));
+        // Only a time the vehicle actually sent is its fix time, so silent units show up as stale.
+        // A unit without one has no record time either: it stays unchanged across refreshes
+        // instead of being written, appended to history and pushed to clients every time
+        LocalDateTime fixTime = soapUtils.parseTimeOrNull(dto.getTime());
+        bus.setTime(fixTime);
+        bus.setRecordTime(fixTime);
         
         Double longitude = null;
         Double latitude = null;
@@ -165,8 +258,6 @@ public class BusSoapService {
                 bus.setLatitude(latitude);
                 
                 bus.setCoordinate(latitude + "," + longitude);
-                
-                calculateNearestGarage(bus, latitude, longitude, garageMap);
             }
         }
         
@@ -179,36 +270,16 @@ public class BusSoapService {
         return bus;
     }
     
-    private void calculateNearestGarage(Bus bus, double busLat, double busLon, Map<String, Garage> garageMap) {
-        double minDistance = Double.MAX_VALUE;
-        Garage nearestGarage = null;
-        
-        for (Garage garage : garageMap.values()) {
-            if (garage.getCoordinate() == null) {
-                continue;
-            }
-            
-            String[] coordinates = garage.getCoordinate().split(",");
-            if (coordinates.length != 2) {
-                continue;
-            }
-            
-            double garageLat = Double.parseDouble(coordinates[0]);
-            double garageLon = Double.parseDouble(coordinates[1]);
-            
-            double distance = soapUtils.calculateDistance(busLat, busLon, garageLat, garageLon);
-            
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearestGarage = garage;
-            }
-        }
-        
-        if (nearestGarage != null) {
-            bus.setNearestGarageCode(nearestGarage.getGarageCode());
-            bus.setNearestGarageName(nearestGarage.getGarageName());
-            bus.setDistanceToNearestGarage(minDistance);
+    // Package-private so the benchmarks module can measure it
+    void assignNearestGarage(Bus bus, GarageSpatialIndex garageIndex) {
+        if (bus.getLatitude() == null || bus.getLongitude() == null) {
+            return;
         }
+        garageIndex.nearest(bus.getLatitude(), bus.getLongitude()).ifPresent(nearest -> {
+            bus.setNearestGarageCode(nearest.getGarage().getGarageCode());
+            bus.setNearestGarageName(nearest.getGarage().getGarageName());
+            bus.setDistanceToNearestGarage(nearest.getDistance());
+        });
     }
     
     private void logDataRetrieval(boolean success, String errorMessage) {
@@ -0,0 +1,38 @@
+package com.iett.tracking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps garage and bus data fresh in the background, each dataset on its own interval.
+ * Request threads only ever read what the last refresh produced.
+ */
+@Component
+@Slf4j
+public class DataRefreshScheduler {
+
+    private final GarageSoapService garageSoapService;
+    private final BusSoapService busSoapService;
+
+    public DataRefreshScheduler(GarageSoapService garageSoapService, BusSoapService busSoapService) {
+        this.garageSoapService = garageSoapService;
+        this.busSoapService = busSoapService;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${iett.refresh.garage-interval-seconds}", timeUnit = TimeUnit.SECONDS)
+    public void refreshGarages() {
+        if (!garageSoapService.refresh()) {
+            log.debug("Garage refresh already in progress, skipping scheduled run");
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${iett.refresh.bus-interval-seconds}", timeUnit = TimeUnit.SECONDS)
+    public void refreshBuses() {
+        if (!busSoapService.refresh()) {
+            log.debug("Bus refresh already in progress, skipping scheduled run");
+        }
+    }
+}
@@ -1,35 +1,39 @@
 package com.iett.tracking.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.iett.tracking.dto.soap.SoapGarageDTO;
+import com.iett.tracking.geo.GarageLocator;
+import com.iett.tracking.metrics.IngestMetrics;
 import com.iett.tracking.model.DataRetrievalLog;
 import com.iett.tracking.model.Garage;
 import com.iett.tracking.repository.DataRetrievalLogRepository;
+import com.iett.tracking.repository.GarageBulkWriter;
 import com.iett.tracking.repository.GarageRepository;
+import com.iett.tracking.util.SingleFlight;
 import com.iett.tracking.util.SoapUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONObject;
-import org.json.XML;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class GarageSoapService {
     
-    private final RestTemplate restTemplate;
+    private final SoapTransport soapTransport;
     private final GarageRepository garageRepository;
     private final DataRetrievalLogRepository dataRetrievalLogRepository;
     private final SoapUtils soapUtils;
+    private final GarageLocator garageLocator;
+    private final IngestMetrics ingestMetrics;
+    private final GarageBulkWriter garageBulkWriter;
     
     @Value("${iett.soap.garage-service-url}")
     private String serviceUrl;
@@ -37,92 +41,137 @@ public class GarageSoapService {
     @Value("${iett.soap.garage-method}")
     private String methodName;
     
-    @Value("${iett.soap.data-cache-duration-minutes}")
-    private int cacheDurationMinutes;
+    @Value("${iett.refresh.garage-interval-seconds}")
+    private int refreshIntervalSeconds;
+    
+    private final SingleFlight refreshFlight = new SingleFlight();
+    private volatile boolean initialized;
     
     public GarageSoapService(
-            RestTemplate restTemplate,
+            SoapTransport soapTransport,
             GarageRepository garageRepository,
             DataRetrievalLogRepository dataRetrievalLogRepository,
-            SoapUtils soapUtils) {
-        this.restTemplate = restTemplate;
+            SoapUtils soapUtils,
+            GarageLocator garageLocator,
+            IngestMetrics ingestMetrics,
+            GarageBulkWriter garageBulkWriter) {
+        this.soapTransport = soapTransport;
         this.garageRepository = garageRepository;
         this.dataRetrievalLogRepository = dataRetrievalLogRepository;
         this.soapUtils = soapUtils;
+        this.garageLocator = garageLocator;
+        this.ingestMetrics = ingestMetrics;
+        this.garageBulkWriter = garageBulkWriter;
     }
     
-    public List<Garage> getGarageData() {
-        boolean needsRefresh = needsDataRefresh();
-        
-        if (!needsRefresh) {
-            log.info("Using cached garage data from database");
-            return garageRepository.findAll();
+    /**
+     * Count a read of the garage data for the cache hit/miss metrics. Garages are read from the
+     * database and the garage index, never through this service, so read endpoints call this.
+     */
+    public void recordRead() {
+        ingestMetrics.recordRead(IngestMetrics.GARAGE, refreshIntervalSeconds);
+    }
+    
+    /**
+     * Refresh garage data from the SOAP service unless a refresh is already running
+     * @return True if this call performed the refresh, false if it was skipped
+     */
+    public boolean refresh() {
+        return refreshFlight.runIfIdle(this::doRefresh);
+    }
+    
+    /**
+     * Refresh garage data from the SOAP service now, or wait for the refresh that is already running
+     * @return The garages after the refresh
+     */
+    public List<Garage> forceRefresh() {
+        refreshFlight.runOrJoin(this::fetchAndStore);
+        return garageRepository.findAll();
+    }
+    
+    private void doRefresh() {
+        // After a restart, skip the SOAP call if the stored data is still within the refresh interval
+        if (!initialized) {
+            initialized = true;
+            if (!needsDataRefresh()) {
+                log.info("Garage data in database is recent, skipping initial SOAP fetch");
+                dataRetrievalLogRepository.findFirstByDataTypeAndSuccessTrueOrderByRetrievalTimeDesc(DataRetrievalLog.DataType.GARAGE)
+                        .ifPresent(retrieval -> ingestMetrics.recordStoredRetrieval(IngestMetrics.GARAGE, retrieval.getRetrievalTime()));
+                return;
+            }
         }
-        
+        fetchAndStore();
+    }
+    
+    private void fetchAndStore() {
         log.info("Fetching fresh garage data from SOAP service");
-        List<SoapGarageDTO> garageData = fetchGarageDataFromSoap();
-        
-        if (!garageData.isEmpty()) {
-            updateGarageDatabase(garageData);
-            return garageRepository.findAll();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<List<Garage>> garages = fetchGarageDataFromSoap();
+            
+            if (garages.isPresent() && !garages.get().isEmpty()) {
+                updateGarageDatabase(garages.get());
+            }
+            success = garages.isPresent();
+        } finally {
+            ingestMetrics.recordRefresh(IngestMetrics.GARAGE, success, System.nanoTime() - start);
         }
-        
-        return garageRepository.findAll();
     }
-    
 
     private boolean needsDataRefresh() {
-        LocalDateTime threshold = LocalDateTime.now().minusMinutes(cacheDurationMinutes);
+        LocalDateTime threshold = LocalDateTime.now().minusSeconds(refreshIntervalSeconds);
         
         return !dataRetrievalLogRepository.existsRecentSuccessfulRetrieval(
                 DataRetrievalLog.DataType.GARAGE, threshold);
     }
     
-    private List<SoapGarageDTO> fetchGarageDataFromSoap() {
+    /**
+     * Fetch garages from the SOAP service, mapping each record to an entity as soon as it is decoded
+     * @return The mapped garages, or empty if the request failed
+     */
+    private Optional<List<Garage>> fetchGarageDataFromSoap() {
         try {
-            String soapRequest = 
-                    "<soap:Envelope xmlns:soap='http://schemas.xmlsoap.org/soap/envelope/'>" +
-                    "<soap:Body>" +
-                    "<" + methodName + " xmlns=\"http://tempuri.org/\" />" +
-                    "</soap:Body>" +
-                    "</soap:Envelope>";
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.TEXT_XML);
-            headers.set("SOAPAction", "http://tempuri.org/" + methodName);
-            
-            HttpEntity<String> request = new HttpEntity<>(soapRequest, headers);
-            
-            log.info("Sending SOAP request to {}", serviceUrl);
-            
-            String responseXml = restTemplate.postForObject(serviceUrl, request, String.class);
-            
-            JSONObject jsonObj = XML.toJSONObject(responseXml);
-            
-            JSONObject envelope = jsonObj.getJSONObject("soap:Envelope");
-            JSONObject body = envelope.getJSONObject("soap:Body");
-            JSONObject response = body.getJSONObject(methodName + "Response");
-            String jsonData = response.getString(methodName + "Result");
+            List<Garage> garages = new ArrayList<>();
+            long[] mappingNanos = new long[1];
+            soapTransport.call(serviceUrl, methodName, SoapGarageDTO.class, dto -> {
+                long mappingStart = System.nanoTime();
+                garages.add(mapToGarageEntity(dto));
+                mappingNanos[0] += System.nanoTime() - mappingStart;
+            });
+            ingestMetrics.recordStage(IngestMetrics.GARAGE, IngestMetrics.STAGE_MAPPING, mappingNanos[0]);
             
             logDataRetrieval(true, null);
             
-            return soapUtils.parseJsonToList(jsonData, new TypeReference<List<SoapGarageDTO>>() {});
+            return Optional.of(garages);
         } catch (Exception e) {
             log.error("Error fetching garage data: {}", e.getMessage(), e);
             logDataRetrieval(false, e.getMessage());
-            return Collections.emptyList();
+            return Optional.empty();
         }
     }
     
-    private void updateGarageDatabase(List<SoapGarageDTO> garageDTOs) {
-        garageRepository.deleteAll();
-        
-        List<Garage> garages = garageDTOs.stream()
-                .map(this::mapToGarageEntity)
-                .collect(Collectors.toList());
+    private void updateGarageDatabase(List<Garage> garages) {
+        // Garages rarely change; keeping the stored rows keeps the data version, and so every client's ETag, valid
+        if (contentOf(garageRepository.findAll()).equals(contentOf(garages))) {
+            log.info("Garage data unchanged, keeping the {} stored garages", garages.size());
+            return;
+        }
         
-        garageRepository.saveAll(garages);
-        log.info("Saved {} garages to database", garages.size());
+        // One transaction, so readers never see the table half rewritten, and the version is bumped
+        // before readers that tag rows with it are let back in
+        garageLocator.change(() -> {
+            List<Garage> saved = ingestMetrics.timeStage(IngestMetrics.GARAGE, IngestMetrics.STAGE_DB_WRITE,
+                    () -> garageBulkWriter.replaceAll(garages));
+            log.info("Saved {} garages to database", saved.size());
+            return ingestMetrics.timeStage(IngestMetrics.GARAGE, IngestMetrics.STAGE_INDEX_BUILD, () -> garageLocator.rebuild(saved));
+        });
+    }
+    
+    private static Map<List<Object>, Long> contentOf(Collection<Garage> garages) {
+        return garages.stream().collect(Collectors.groupingBy(
+                garage -> Arrays.asList(garage.getId(), garage.getGarageName(), garage.getGarageCode(), garage.getCoordinate()),
+                Collectors.counting()));
     }
     
     private Garage mapToGarageEntity(SoapGarageDTO dto) {
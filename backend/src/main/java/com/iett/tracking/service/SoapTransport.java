@@ -0,0 +1,187 @@
+package com.iett.tracking.service;
+
+import com.iett.tracking.dto.SoapEndpointStatsDTO;
+import com.iett.tracking.util.SoapEnvelopeDecoder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Shared transport for the IETT SOAP services: builds the request envelope, sends it over
+ * the pooled HTTP client and streams the response through {@link SoapEnvelopeDecoder}.
+ * Call statistics are kept in Micrometer: {@code iett.soap.call} times the whole call,
+ * {@code iett.soap.roundtrip} the time until the response arrives and {@code iett.soap.decode}
+ * the time spent reading and decoding the body, excluding the time the consumer takes per record.
+ */
+@Component
+@Slf4j
+public class SoapTransport {
+
+    private final RestTemplate restTemplate;
+    private final SoapEnvelopeDecoder soapEnvelopeDecoder;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final MeterRegistry meterRegistry;
+
+    public SoapTransport(
+            RestTemplate restTemplate,
+            SoapEnvelopeDecoder soapEnvelopeDecoder,
+            PoolingHttpClientConnectionManager connectionManager,
+            MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.soapEnvelopeDecoder = soapEnvelopeDecoder;
+        this.connectionManager = connectionManager;
+        this.meterRegistry = meterRegistry;
+
+        registerPoolGauge("leased", PoolStats::getLeased);
+        registerPoolGauge("available", PoolStats::getAvailable);
+        registerPoolGauge("pending", PoolStats::getPending);
+        registerPoolGauge("max", PoolStats::getMax);
+    }
+
+    /**
+     * Call a "_json" SOAP method and decode its result records one by one
+     * @param serviceUrl The service URL
+     * @param methodName The SOAP method name
+     * @param type The record type
+     * @param consumer Receives each decoded record
+     * @return The number of records decoded
+     * @param <T> The record type
+     */
+    public <T> int call(String serviceUrl, String methodName, Class<T> type, Consumer<T> consumer) {
+        String soapRequest =
+                "<soap:Envelope xmlns:soap='http://schemas.xmlsoap.org/soap/envelope/'>" +
+                "<soap:Body>" +
+                "<" + methodName + " xmlns=\"http://tempuri.org/\" />" +
+                "</soap:Body>" +
+                "</soap:Envelope>";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_XML);
+        headers.set("SOAPAction", "http://tempuri.org/" + methodName);
+
+        HttpEntity<String> request = new HttpEntity<>(soapRequest, headers);
+
+        log.info("Sending SOAP request to {}", serviceUrl);
+
+        long start = System.nanoTime();
+        long[] consumerNanos = new long[1];
+        int records = 0;
+        boolean success = false;
+        try {
+            Integer decoded = restTemplate.execute(serviceUrl, HttpMethod.POST, restTemplate.httpEntityCallback(request),
+                    response -> {
+                        long responseReceived = System.nanoTime();
+                        roundTripTimer(methodName).record(responseReceived - start, TimeUnit.NANOSECONDS);
+                        int count = soapEnvelopeDecoder.decode(response.getBody(), methodName + "Result", type, record -> {
+                            long consumerStart = System.nanoTime();
+                            consumer.accept(record);
+                            consumerNanos[0] += System.nanoTime() - consumerStart;
+                        });
+                        decodeTimer(methodName).record(System.nanoTime() - responseReceived - consumerNanos[0], TimeUnit.NANOSECONDS);
+                        return count;
+                    });
+            records = decoded != null ? decoded : 0;
+            success = true;
+            return records;
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            callTimer(methodName, success).record(elapsedNanos, TimeUnit.NANOSECONDS);
+            recordCounter(methodName).increment(records);
+            log.info("SOAP call {} {} in {} ms ({} records)",
+                    methodName, success ? "completed" : "failed", elapsedNanos / 1_000_000, records);
+        }
+    }
+
+    /**
+     * Get call statistics for every endpoint used so far
+     * @return Statistics per SOAP method, ordered by method name
+     */
+    public List<SoapEndpointStatsDTO> getEndpointStats() {
+        Map<String, SoapEndpointStatsDTO> stats = new TreeMap<>();
+        for (Timer timer : meterRegistry.find("iett.soap.call").timers()) {
+            String endpoint = timer.getId().getTag("method");
+            SoapEndpointStatsDTO endpointStats = stats.computeIfAbsent(endpoint, e -> SoapEndpointStatsDTO.builder()
+                    .endpoint(e)
+                    .records((long) recordCounter(e).count())
+                    .build());
+
+            long requests = endpointStats.getRequests() + timer.count();
+            double totalMillis = endpointStats.getAverageMillis() * endpointStats.getRequests() + timer.totalTime(TimeUnit.MILLISECONDS);
+            endpointStats.setRequests(requests);
+            endpointStats.setAverageMillis(requests > 0 ? totalMillis / requests : 0.0);
+            endpointStats.setMaxMillis(Math.max(endpointStats.getMaxMillis(), (long) timer.max(TimeUnit.MILLISECONDS)));
+            if ("failure".equals(timer.getId().getTag("outcome"))) {
+                endpointStats.setFailures(endpointStats.getFailures() + timer.count());
+            }
+        }
+        return List.copyOf(stats.values());
+    }
+
+    /**
+     * Get the state of the HTTP connection pool
+     * @return Leased, available, pending and maximum connection counts
+     */
+    public Map<String, Integer> getPoolStats() {
+        PoolStats stats = connectionManager.getTotalStats();
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        pool.put("leased", stats.getLeased());
+        pool.put("available", stats.getAvailable());
+        pool.put("pending", stats.getPending());
+        pool.put("max", stats.getMax());
+        return pool;
+    }
+
+    private Timer callTimer(String methodName, boolean success) {
+        return Timer.builder("iett.soap.call")
+                .description("Duration of a complete SOAP call, including decoding and consuming the records")
+                .tag("method", methodName)
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry);
+    }
+
+    private Timer roundTripTimer(String methodName) {
+        return Timer.builder("iett.soap.roundtrip")
+                .description("Time from sending a SOAP request until the response arrives")
+                .tag("method", methodName)
+                .register(meterRegistry);
+    }
+
+    private Timer decodeTimer(String methodName) {
+        return Timer.builder("iett.soap.decode")
+                .description("Time spent reading and decoding a SOAP response body, excluding record consumers")
+                .tag("method", methodName)
+                .register(meterRegistry);
+    }
+
+    private Counter recordCounter(String methodName) {
+        return Counter.builder("iett.soap.records")
+                .description("Records decoded from SOAP responses")
+                .tag("method", methodName)
+                .register(meterRegistry);
+    }
+
+    private void registerPoolGauge(String state, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("iett.soap.pool.connections", connectionManager, manager -> value.applyAsDouble(manager.getTotalStats()))
+                .description("Connections in the SOAP HTTP connection pool")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,271 @@
+package com.iett.tracking.simulator;
+
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.dto.soap.SoapGarageDTO;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A synthetic IETT fleet that moves over time. Vehicles drive from stop to stop around their garage
+ * at city-bus speeds, wait at each stop, and report their position every few seconds the way the
+ * real vehicle trackers do, so consecutive SOAP responses differ the way real ones do. A share of the
+ * fleet stays parked at its garage.
+ */
+public final class SimulatedFleet {
+
+    public static final int MAX_VEHICLES = 50_000;
+
+    // Roughly the built-up area of Istanbul on both sides of the Bosphorus
+    private static final double MIN_LATITUDE = 40.85;
+    private static final double MAX_LATITUDE = 41.25;
+    private static final double MIN_LONGITUDE = 28.50;
+    private static final double MAX_LONGITUDE = 29.45;
+
+    private static final double KM_PER_DEGREE = 111.32;
+    private static final double OPERATING_RADIUS_KM = 12.0;
+    private static final double MIN_STOP_SPACING_KM = 0.3;
+    private static final double MAX_STOP_SPACING_KM = 0.8;
+    private static final long MAX_STEP_MILLIS = 10 * 60 * 1000L;
+
+    private static final String[] OPERATORS = {
+            "İETT", "Özel Halk Otobüsü", "Otobüs A.Ş.", "İstanbul Halk Ulaşım", "Yeni İstanbul Özel Halk"
+    };
+    private static final String[] DOOR_PREFIXES = {"A", "B", "C", "K", "O"};
+    private static final String[] PLATE_LETTERS = {"HO", "HA", "KZ", "TY", "ME", "ZB"};
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Random random;
+    private final List<SoapGarageDTO> garages;
+    private final double[] garageLatitudes;
+    private final double[] garageLongitudes;
+    private final List<Vehicle> vehicles;
+    private final ZoneId timeZone;
+    private long lastAdvanceMillis;
+
+    /**
+     * @param vehicleCount Number of vehicles, at most {@link #MAX_VEHICLES}
+     * @param garageCount Number of garages the vehicles are spread over
+     * @param seed Random seed; the same seed gives the same fleet
+     * @param timeZone Zone the report times are written in, like the IETT service
+     */
+    public SimulatedFleet(int vehicleCount, int garageCount, long seed, ZoneId timeZone) {
+        if (vehicleCount < 0 || vehicleCount > MAX_VEHICLES) {
+            throw new IllegalArgumentException("Vehicle count must be between 0 and " + MAX_VEHICLES);
+        }
+        if (garageCount < 1) {
+            throw new IllegalArgumentException("At least one garage is needed");
+        }
+
+        this.random = new Random(seed);
+        this.timeZone = timeZone;
+        this.garages = new ArrayList<>(garageCount);
+        this.garageLatitudes = new double[garageCount];
+        this.garageLongitudes = new double[garageCount];
+        for (int i = 0; i < garageCount; i++) {
+            garageLatitudes[i] = MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE);
+            garageLongitudes[i] = MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE);
+            garages.add(new SoapGarageDTO((long) i + 1, "Garaj " + (i + 1), garageCode(i),
+                    "POINT (" + coordinate(garageLongitudes[i]) + " " + coordinate(garageLatitudes[i]) + ")"));
+        }
+
+        long now = System.currentTimeMillis();
+        this.vehicles = new ArrayList<>(vehicleCount);
+        for (int i = 0; i < vehicleCount; i++) {
+            vehicles.add(newVehicle(i, now));
+        }
+        this.lastAdvanceMillis = now;
+    }
+
+    /**
+     * Get the garages, as returned by GetGaraj_json
+     * @return The garages
+     */
+    public List<SoapGarageDTO> getGarages() {
+        return garages;
+    }
+
+    /**
+     * Move the fleet forward to the current time and return what the vehicles last reported,
+     * as returned by GetFiloAracKonum_json
+     * @return One record per vehicle
+     */
+    public synchronized List<SoapBusDTO> advance() {
+        long now = System.currentTimeMillis();
+        // A long pause between calls would otherwise replay hours of driving in one go
+        long from = Math.max(lastAdvanceMillis, now - MAX_STEP_MILLIS);
+        lastAdvanceMillis = now;
+
+        List<SoapBusDTO> records = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            vehicle.advance(from, now);
+            records.add(vehicle.report);
+        }
+        return records;
+    }
+
+    public int size() {
+        return vehicles.size();
+    }
+
+    private Vehicle newVehicle(int index, long now) {
+        int garage = random.nextInt(garageLatitudes.length);
+        Vehicle vehicle = new Vehicle(garage);
+        vehicle.latitude = garageLatitudes[garage];
+        vehicle.longitude = garageLongitudes[garage];
+        // About one in twelve vehicles is out of service and stays at its garage
+        vehicle.parked = random.nextInt(12) == 0;
+        vehicle.cruiseSpeedKmh = 18 + random.nextDouble() * 30;
+        vehicle.reportPeriodMillis = 5_000 + random.nextInt(25_000);
+        vehicle.nextReportMillis = now - random.nextInt(vehicle.reportPeriodMillis);
+
+        if (!vehicle.parked) {
+            // Start somewhere along the route rather than all at the garage
+            double radius = random.nextDouble() * OPERATING_RADIUS_KM;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            vehicle.latitude = clamp(vehicle.latitude + radius * Math.cos(bearing) / KM_PER_DEGREE, MIN_LATITUDE, MAX_LATITUDE);
+            vehicle.longitude = clamp(vehicle.longitude + radius * Math.sin(bearing) / kmPerLongitudeDegree(vehicle.latitude),
+                    MIN_LONGITUDE, MAX_LONGITUDE);
+            nextStop(vehicle);
+        }
+
+        SoapBusDTO report = new SoapBusDTO();
+        report.setOperator(OPERATORS[random.nextInt(OPERATORS.length)]);
+        report.setGarage(garageCode(garage));
+        report.setDoorNo(DOOR_PREFIXES[index % DOOR_PREFIXES.length] + "-" + (1000 + index));
+        // A small share of vehicles report no plate, as in the real feed
+        report.setLicensePlate(random.nextInt(40) == 0 ? ""
+                : "34 " + PLATE_LETTERS[random.nextInt(PLATE_LETTERS.length)] + " " + (1000 + index));
+        vehicle.report = report;
+        vehicle.sendReport(vehicle.nextReportMillis);
+        return vehicle;
+    }
+
+    private void nextStop(Vehicle vehicle) {
+        double garageLatitude = garageLatitudes[vehicle.garage];
+        double garageLongitude = garageLongitudes[vehicle.garage];
+        double spacing = MIN_STOP_SPACING_KM + random.nextDouble() * (MAX_STOP_SPACING_KM - MIN_STOP_SPACING_KM);
+
+        // Drift back towards the garage once the vehicle is far out, so routes stay local
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        double fromGarageKm = distanceKm(vehicle.latitude, vehicle.longitude, garageLatitude, garageLongitude);
+        if (fromGarageKm > OPERATING_RADIUS_KM) {
+            bearing = Math.atan2((garageLongitude - vehicle.longitude) * kmPerLongitudeDegree(vehicle.latitude),
+                    (garageLatitude - vehicle.latitude) * KM_PER_DEGREE);
+        }
+
+        vehicle.stopLatitude = clamp(vehicle.latitude + spacing * Math.cos(bearing) / KM_PER_DEGREE, MIN_LATITUDE, MAX_LATITUDE);
+        vehicle.stopLongitude = clamp(vehicle.longitude + spacing * Math.sin(bearing) / kmPerLongitudeDegree(vehicle.latitude),
+                MIN_LONGITUDE, MAX_LONGITUDE);
+    }
+
+    private static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = (lat2 - lat1) * KM_PER_DEGREE;
+        double dLon = (lon2 - lon1) * kmPerLongitudeDegree(lat1);
+        return Math.sqrt(dLat * dLat + dLon * dLon);
+    }
+
+    private static double kmPerLongitudeDegree(double latitude) {
+        return KM_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static String garageCode(int index) {
+        return String.format(Locale.ROOT, "G%02d", index + 1);
+    }
+
+    private static String coordinate(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private final class Vehicle {
+
+        private final int garage;
+        private boolean parked;
+        private double latitude;
+        private double longitude;
+        private double stopLatitude;
+        private double stopLongitude;
+        private double cruiseSpeedKmh;
+        private double speedKmh;
+        private long dwellUntilMillis;
+        private int reportPeriodMillis;
+        private long nextReportMillis;
+        private SoapBusDTO report;
+
+        private Vehicle(int garage) {
+            this.garage = garage;
+        }
+
+        private void advance(long from, long to) {
+            long time = from;
+            while (time < to) {
+                // Simulate up to the next report so each report shows where the vehicle was at that moment
+                long until = Math.min(to, Math.max(nextReportMillis, time));
+                drive(time, until);
+                time = until;
+                if (time >= nextReportMillis) {
+                    sendReport(time);
+                    nextReportMillis = time + reportPeriodMillis;
+                }
+            }
+        }
+
+        private void drive(long from, long to) {
+            if (parked) {
+                speedKmh = 0;
+                return;
+            }
+
+            long time = from;
+            while (time < to) {
+                if (time < dwellUntilMillis) {
+                    speedKmh = 0;
+                    time = Math.min(to, dwellUntilMillis);
+                    continue;
+                }
+
+                // Speed varies a little around the cruise speed, the way traffic does
+                speedKmh = Math.max(5, cruiseSpeedKmh + (random.nextDouble() - 0.5) * 10);
+                double remainingKm = distanceKm(latitude, longitude, stopLatitude, stopLongitude);
+                long arrivalMillis = time + (long) (remainingKm / speedKmh * 3_600_000);
+
+                if (arrivalMillis <= to) {
+                    latitude = stopLatitude;
+                    longitude = stopLongitude;
+                    time = arrivalMillis;
+                    dwellUntilMillis = time + 10_000 + random.nextInt(35_000);
+                    nextStop(this);
+                } else {
+                    double fraction = (to - time) / (double) (arrivalMillis - time);
+                    latitude += (stopLatitude - latitude) * fraction;
+                    longitude += (stopLongitude - longitude) * fraction;
+                    time = to;
+                }
+            }
+        }
+
+        private void sendReport(long millis) {
+            SoapBusDTO next = new SoapBusDTO();
+            next.setOperator(report.getOperator());
+            next.setGarage(report.getGarage());
+            next.setDoorNo(report.getDoorNo());
+            next.setLicensePlate(report.getLicensePlate());
+            next.setTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), timeZone).format(TIME_FORMAT));
+            next.setLatitude(coordinate(latitude));
+            next.setLongitude(coordinate(longitude));
+            next.setSpeed(Long.toString(Math.round(speedKmh)));
+            // A new record per report, so a response being written keeps the values it started with
+            report = next;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.iett.tracking.simulator;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.iett.tracking.dto.soap.SoapBusDTO;
+import com.iett.tracking.dto.soap.SoapGarageDTO;
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the IETT SOAP services, for load tests and local development without access to
+ * api.ibb.gov.tr. Only active with the {@code simulator} profile, which also points the SOAP
+ * service URLs here. Answers GetFiloAracKonum_json from a {@link SimulatedFleet} and GetGaraj_json
+ * with the fleet's garages, in the same envelope the real services use, and can add latency and
+ * failures to every call.
+ */
+@RestController
+@RequestMapping("/simulator/iett")
+@Profile("simulator")
+@Hidden
+@Slf4j
+public class SoapSimulatorController {
+
+    private static final String BUS_METHOD = "GetFiloAracKonum_json";
+    private static final String GARAGE_METHOD = "GetGaraj_json";
+    private static final Pattern BODY_METHOD = Pattern.compile("<soap:Body>\\s*<(\\w+)");
+    private static final MediaType TEXT_XML_UTF8 = new MediaType(MediaType.TEXT_XML, StandardCharsets.UTF_8);
+
+    private final SimulatedFleet fleet;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter busWriter;
+    private final ObjectWriter garageWriter;
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double errorRate;
+
+    public SoapSimulatorController(
+            ObjectMapper objectMapper,
+            @Value("${iett.simulator.vehicles}") int vehicles,
+            @Value("${iett.simulator.garages}") int garages,
+            @Value("${iett.simulator.seed}") long seed,
+            @Value("${iett.simulator.latency-ms}") long latencyMillis,
+            @Value("${iett.simulator.latency-jitter-ms}") long latencyJitterMillis,
+            @Value("${iett.simulator.error-rate}") double errorRate,
+            @Value("${iett.soap.time-zone}") ZoneId timeZone) {
+        this.fleet = new SimulatedFleet(vehicles, garages, seed, timeZone);
+        this.objectMapper = objectMapper;
+        this.busWriter = objectMapper.writerFor(SoapBusDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.garageWriter = objectMapper.writerFor(SoapGarageDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        this.errorRate = errorRate;
+        log.info("SOAP simulator serving {} vehicles and {} garages (latency {}+{} ms, error rate {})",
+                vehicles, garages, latencyMillis, latencyJitterMillis, errorRate);
+    }
+
+    /**
+     * Handle a SOAP call to either service; the method is taken from the SOAPAction header,
+     * or from the request body if the header is missing
+     */
+    @PostMapping(value = "/{service}", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<StreamingResponseBody> call(
+            @RequestHeader(value = "SOAPAction", required = false) String soapAction,
+            @RequestBody(required = false) String request) throws InterruptedException {
+
+        String method = methodOf(soapAction, request);
+
+        simulateLatency();
+
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            return fault(HttpStatus.INTERNAL_SERVER_ERROR, "soap:Server", "Simulated server error");
+        }
+
+        if (BUS_METHOD.equals(method)) {
+            List<SoapBusDTO> buses = fleet.advance();
+            return envelope(method, generator -> {
+                for (SoapBusDTO bus : buses) {
+                    busWriter.writeValue(generator, bus);
+                }
+            });
+        }
+        if (GARAGE_METHOD.equals(method)) {
+            return envelope(method, generator -> {
+                for (SoapGarageDTO garage : fleet.getGarages()) {
+                    garageWriter.writeValue(generator, garage);
+                }
+            });
+        }
+        return fault(HttpStatus.INTERNAL_SERVER_ERROR, "soap:Client", "Unknown method " + method);
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Write the records as a JSON array inside the result element, streaming straight to the response
+     */
+    private ResponseEntity<StreamingResponseBody> envelope(String method, RecordWriter records) {
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                    + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+                    + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
+                    + "<soap:Body><" + method + "Response xmlns=\"http://tempuri.org/\"><" + method + "Result>");
+
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(new XmlTextWriter(writer));
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            records.write(generator);
+            generator.writeEndArray();
+            generator.close();
+
+            writer.write("</" + method + "Result></" + method + "Response></soap:Body></soap:Envelope>");
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(TEXT_XML_UTF8).body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> fault(HttpStatus status, String code, String message) {
+        String envelope = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><soap:Fault>"
+                + "<faultcode>" + code + "</faultcode><faultstring>" + message + "</faultstring>"
+                + "</soap:Fault></soap:Body></soap:Envelope>";
+        return ResponseEntity.status(status).contentType(TEXT_XML_UTF8)
+                .body(out -> out.write(envelope.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String methodOf(String soapAction, String request) {
+        if (soapAction != null && !soapAction.isBlank()) {
+            String action = soapAction.replace("\"", "");
+            return action.substring(action.lastIndexOf('/') + 1);
+        }
+        if (request != null) {
+            Matcher matcher = BODY_METHOD.matcher(request);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return "";
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Escapes the characters that cannot appear as-is in XML text content
+     */
+    private static final class XmlTextWriter extends Writer {
+
+        private final Writer out;
+
+        private XmlTextWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            int start = offset;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                String escaped = switch (buffer[i]) {
+                    case '&' -> "&amp;";
+                    case '<' -> "&lt;";
+                    case '>' -> "&gt;";
+                    default -> null;
+                };
+                if (escaped != null) {
+                    out.write(buffer, start, i - start);
+                    out.write(escaped);
+                    start = i + 1;
+                }
+            }
+            out.write(buffer, start, end - start);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The envelope is closed by the caller
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.iett.tracking.stream;
+
+import com.iett.tracking.fleet.FleetColumns;
+import com.iett.tracking.geo.BoundingBox;
+import com.iett.tracking.model.Bus;
+
+/**
+ * Which buses a stream subscriber wants to hear about: optionally one garage,
+ * optionally one map viewport. A bus has to match both when both are given.
+ */
+public final class FleetStreamFilter {
+
+    private final String garageCode;
+    private final BoundingBox boundingBox;
+    private final String key;
+
+    private FleetStreamFilter(String garageCode, BoundingBox boundingBox) {
+        this.garageCode = garageCode;
+        this.boundingBox = boundingBox;
+        this.key = (garageCode != null ? garageCode : "") + "|" + (boundingBox != null ? boundingBox : "");
+    }
+
+    /**
+     * Build a filter from request parameters
+     * @param garageCode Garage code to match exactly, or null/blank for every garage
+     * @param bbox Bounding box as {@code minLon,minLat,maxLon,maxLat}, or null/blank for everywhere
+     * @return The filter
+     * @throws IllegalArgumentException If the bounding box cannot be parsed
+     */
+    public static FleetStreamFilter of(String garageCode, String bbox) {
+        String garage = garageCode == null || garageCode.isBlank() ? null : garageCode.trim();
+        BoundingBox box = bbox == null || bbox.isBlank() ? null : BoundingBox.parse(bbox);
+        return new FleetStreamFilter(garage, box);
+    }
+
+    public boolean matches(Bus bus) {
+        if (garageCode != null && !garageCode.equals(bus.getGarageCode())) {
+            return false;
+        }
+        return boundingBox == null || boundingBox.contains(bus.getLatitude(), bus.getLongitude());
+    }
+
+    public boolean matches(FleetColumns columns, int row) {
+        if (garageCode != null && !garageCode.equals(columns.garageCode(row))) {
+            return false;
+        }
+        return boundingBox == null || boundingBox.contains(columns.latitudeOrNull(row), columns.longitudeOrNull(row));
+    }
+
+    public boolean isUnfiltered() {
+        return garageCode == null && boundingBox == null;
+    }
+
+    /**
+     * Identity of the filter; subscribers with equal keys receive the same payload,
+     * so it is only built and serialized once per refresh
+     */
+    public String key() {
+        return key;
+    }
+}
@@ -0,0 +1,272 @@
+package com.iett.tracking.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iett.tracking.dto.BusDTO;
+import com.iett.tracking.dto.FleetChangesDTO;
+import com.iett.tracking.fleet.FleetColumns;
+import com.iett.tracking.fleet.FleetDiff;
+import com.iett.tracking.fleet.FleetPublishedEvent;
+import com.iett.tracking.fleet.FleetSnapshot;
+import com.iett.tracking.fleet.FleetSnapshotStore;
+import com.iett.tracking.model.Bus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes fleet changes to connected clients over Server-Sent Events.
+ * A single dispatcher thread turns each published snapshot into one payload per distinct filter
+ * and queues it for every matching subscriber; a small pool of sender threads writes the queues out.
+ * Subscribers whose buffer overflows are disconnected and have to reconnect.
+ */
+@Service
+@Slf4j
+public class FleetStreamService {
+
+    static final String FLEET_EVENT = "fleet";
+
+    private final FleetSnapshotStore fleetSnapshotStore;
+    private final ObjectMapper objectMapper;
+    private final int maxSubscribers;
+    private final int bufferSize;
+    private final long timeoutMillis;
+
+    private final Set<FleetSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService dispatcher;
+    private final ExecutorService senders;
+    private final AtomicLong droppedSlowConsumers = new AtomicLong();
+
+    public FleetStreamService(
+            FleetSnapshotStore fleetSnapshotStore,
+            ObjectMapper objectMapper,
+            @Value("${iett.stream.max-subscribers}") int maxSubscribers,
+            @Value("${iett.stream.buffer-size}") int bufferSize,
+            @Value("${iett.stream.timeout-minutes}") long timeoutMinutes,
+            @Value("${iett.stream.sender-threads}") int senderThreads) {
+        this.fleetSnapshotStore = fleetSnapshotStore;
+        this.objectMapper = objectMapper;
+        this.maxSubscribers = maxSubscribers;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.dispatcher = Executors.newSingleThreadExecutor(daemonThreads("fleet-stream-dispatch-"));
+        this.senders = Executors.newFixedThreadPool(senderThreads, daemonThreads("fleet-stream-send-"));
+    }
+
+    /**
+     * Open a stream for a new client. The first event carries the current fleet (matching the filter)
+     * with {@code full=true}; every later event carries only what changed.
+     * @param filter Which buses the client wants
+     * @return The emitter to return from the controller, or empty if the subscriber limit is reached
+     */
+    public Optional<SseEmitter> subscribe(FleetStreamFilter filter) {
+        if (subscriptions.size() >= maxSubscribers) {
+            log.warn("Rejecting fleet stream subscriber, limit of {} reached", maxSubscribers);
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        FleetSubscription subscription = new FleetSubscription(emitter, filter, bufferSize);
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(() -> close(subscription));
+        emitter.onError(e -> close(subscription));
+
+        // Registered on the dispatcher so the initial snapshot and later deltas can never interleave
+        dispatcher.execute(() -> {
+            FleetSnapshot snapshot = fleetSnapshotStore.current();
+            subscription.setVersion(snapshot.getVersion());
+            subscriptions.add(subscription);
+            enqueue(subscription, fullMessage(snapshot, filter));
+        });
+        return Optional.of(emitter);
+    }
+
+    @EventListener
+    public void onFleetPublished(FleetPublishedEvent event) {
+        dispatcher.execute(() -> broadcast(event));
+    }
+
+    @Scheduled(fixedDelayString = "${iett.stream.heartbeat-seconds}", timeUnit = TimeUnit.SECONDS)
+    public void sendHeartbeats() {
+        // Keeps idle connections open through proxies and weeds out clients that went away silently
+        FleetSubscription.Message heartbeat = FleetSubscription.Message.comment("keepalive");
+        dispatcher.execute(() -> subscriptions.forEach(subscription -> enqueue(subscription, heartbeat)));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscriptions.size());
+        stats.put("maxSubscribers", maxSubscribers);
+        stats.put("droppedSlowConsumers", droppedSlowConsumers.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        for (FleetSubscription subscription : subscriptions) {
+            close(subscription);
+        }
+    }
+
+    private void broadcast(FleetPublishedEvent event) {
+        long version = event.getCurrent().getVersion();
+        Map<String, Optional<FleetSubscription.Message>> messages = new HashMap<>();
+        for (FleetSubscription subscription : subscriptions) {
+            if (subscription.getVersion() >= version) {
+                continue;
+            }
+            FleetStreamFilter filter = subscription.getFilter();
+            Optional<FleetSubscription.Message> message =
+                    messages.computeIfAbsent(filter.key(), key -> deltaMessage(event, filter));
+            subscription.setVersion(version);
+            message.ifPresent(m -> enqueue(subscription, m));
+        }
+    }
+
+    private void enqueue(FleetSubscription subscription, FleetSubscription.Message message) {
+        if (!subscription.offer(message)) {
+            if (close(subscription)) {
+                droppedSlowConsumers.incrementAndGet();
+                log.warn("Dropped slow fleet stream subscriber after {} buffered events", bufferSize);
+            }
+            return;
+        }
+        if (subscription.tryStartDraining()) {
+            senders.execute(() -> drain(subscription));
+        }
+    }
+
+    private void drain(FleetSubscription subscription) {
+        try {
+            subscription.sendPending();
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Fleet stream subscriber disconnected: {}", e.getMessage());
+            close(subscription);
+        } finally {
+            subscription.stopDraining();
+        }
+        // A message may have arrived between the last poll and releasing the drain flag
+        if (subscription.hasPending() && subscription.tryStartDraining()) {
+            senders.execute(() -> drain(subscription));
+        }
+    }
+
+    private boolean close(FleetSubscription subscription) {
+        subscriptions.remove(subscription);
+        if (!subscription.close()) {
+            return false;
+        }
+        try {
+            subscription.getEmitter().complete();
+        } catch (IllegalStateException e) {
+            log.debug("Fleet stream emitter already completed");
+        }
+        return true;
+    }
+
+    private FleetSubscription.Message fullMessage(FleetSnapshot snapshot, FleetStreamFilter filter) {
+        FleetColumns columns = snapshot.getColumns();
+        List<BusDTO> buses = new ArrayList<>();
+        for (int row = 0; row < columns.size(); row++) {
+            if (filter.matches(columns, row)) {
+                buses.add(BusDTO.fromRow(columns, row));
+            }
+        }
+        FleetChangesDTO changes = FleetChangesDTO.builder()
+                .fromVersion(0)
+                .version(snapshot.getVersion())
+                .full(true)
+                .added(buses)
+                .moved(List.of())
+                .removed(List.of())
+                .build();
+        return FleetSubscription.Message.event(FLEET_EVENT, snapshot.getVersion(), toJson(changes));
+    }
+
+    /**
+     * Changes relevant to one filter. A bus that moves into the filtered area counts as added
+     * and one that moves out of it as removed, so clients never keep stale buses around.
+     * A bus that stays in the area is only sent when its position changed.
+     */
+    private Optional<FleetSubscription.Message> deltaMessage(FleetPublishedEvent event, FleetStreamFilter filter) {
+        FleetDiff diff = event.getDiff();
+        FleetSnapshot previous = event.getPrevious();
+        List<BusDTO> added = new ArrayList<>();
+        List<BusDTO> moved = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+
+        for (Bus bus : diff.getAdded()) {
+            if (filter.matches(bus)) {
+                added.add(BusDTO.fromBus(bus));
+            }
+        }
+        for (Bus bus : diff.getChanged()) {
+            boolean isIn = filter.matches(bus);
+            int previousRow = previous.rowOf(bus.getId());
+            boolean wasIn = filter.isUnfiltered()
+                    || previousRow >= 0 && filter.matches(previous.getColumns(), previousRow);
+            if (isIn && wasIn) {
+                if (previousRow < 0 || !previous.getColumns().samePosition(previousRow, bus)) {
+                    moved.add(BusDTO.fromBus(bus));
+                }
+            } else if (isIn) {
+                added.add(BusDTO.fromBus(bus));
+            } else if (wasIn) {
+                removed.add(bus.getId());
+            }
+        }
+        for (Bus bus : diff.getRemoved()) {
+            if (filter.matches(bus)) {
+                removed.add(bus.getId());
+            }
+        }
+
+        if (added.isEmpty() && moved.isEmpty() && removed.isEmpty()) {
+            return Optional.empty();
+        }
+        FleetChangesDTO changes = FleetChangesDTO.builder()
+                .fromVersion(previous.getVersion())
+                .version(event.getCurrent().getVersion())
+                .full(false)
+                .added(added)
+                .moved(moved)
+                .removed(removed)
+                .build();
+        return Optional.of(FleetSubscription.Message.event(FLEET_EVENT, event.getCurrent().getVersion(), toJson(changes)));
+    }
+
+    private String toJson(FleetChangesDTO changes) {
+        try {
+            return objectMapper.writeValueAsString(changes);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize fleet changes", e);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory factory = new CustomizableThreadFactory(prefix);
+        factory.setDaemon(true);
+        return factory;
+    }
+}
@@ -0,0 +1,121 @@
+package com.iett.tracking.stream;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One connected stream client. Outgoing messages wait in a bounded buffer and are
+ * written by a sender thread; a client that cannot keep up fills its buffer and is dropped
+ * instead of holding back everybody else.
+ */
+final class FleetSubscription {
+
+    private final SseEmitter emitter;
+    private final FleetStreamFilter filter;
+    private final BlockingQueue<Message> buffer;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // Last fleet version queued for this client, only touched by the dispatcher thread
+    private long version;
+
+    FleetSubscription(SseEmitter emitter, FleetStreamFilter filter, int bufferSize) {
+        this.emitter = emitter;
+        this.filter = filter;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    FleetStreamFilter getFilter() {
+        return filter;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    boolean offer(Message message) {
+        return !closed.get() && buffer.offer(message);
+    }
+
+    boolean hasPending() {
+        return !buffer.isEmpty();
+    }
+
+    boolean tryStartDraining() {
+        return !closed.get() && draining.compareAndSet(false, true);
+    }
+
+    void stopDraining() {
+        draining.set(false);
+    }
+
+    /**
+     * Write everything currently buffered to the client
+     * @throws IOException If the client has gone away
+     */
+    void sendPending() throws IOException {
+        Message message;
+        while (!closed.get() && (message = buffer.poll()) != null) {
+            emitter.send(message.toEvent());
+        }
+    }
+
+    /**
+     * Mark the subscription closed and release its buffer
+     * @return True if this call closed it, false if it was already closed
+     */
+    boolean close() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        buffer.clear();
+        return true;
+    }
+
+    /**
+     * A message ready to be written. The JSON payload is serialized once and shared
+     * by every subscriber it is queued for.
+     */
+    static final class Message {
+
+        private final String name;
+        private final String id;
+        private final String json;
+        private final String comment;
+
+        private Message(String name, String id, String json, String comment) {
+            this.name = name;
+            this.id = id;
+            this.json = json;
+            this.comment = comment;
+        }
+
+        static Message event(String name, long version, String json) {
+            return new Message(name, Long.toString(version), json, null);
+        }
+
+        static Message comment(String comment) {
+            return new Message(null, null, null, comment);
+        }
+
+        SseEmitter.SseEventBuilder toEvent() {
+            if (comment != null) {
+                return SseEmitter.event().comment(comment);
+            }
+            return SseEmitter.event().id(id).name(name).data(json, MediaType.APPLICATION_JSON);
+        }
+    }
+}
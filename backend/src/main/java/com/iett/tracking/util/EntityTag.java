@@ -0,0 +1,67 @@
+package com.iett.tracking.util;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ETags for read endpoints. A tag names the data set, its version and the request
+ * parameters, so it changes exactly when the response would, and a request can be answered
+ * with {@code 304 Not Modified} before anything is queried or serialized.
+ * <p>
+ * The media type the response is written in is part of every tag, because the same data is served
+ * as JSON, CBOR or Smile and each encoding is a different representation with its own tag. Only the
+ * negotiated type counts, so clients that word their Accept header differently still share tags.
+ * Tags are weak: the servlet container only compresses responses without a strong tag, and a
+ * gzipped body is the same data as the plain one.
+ */
+public final class EntityTag {
+
+    private EntityTag() {
+    }
+
+    /**
+     * Build the tag of a response to the current request
+     * @param dataset Name of the data set the response is read from
+     * @param version Version of the data set
+     * @param mediaType Media type the response is written in
+     * @param parameters Every request parameter that affects the response
+     * @return The weak, quoted tag
+     */
+    public static String of(String dataset, long version, MediaType mediaType, Object... parameters) {
+        StringBuilder key = new StringBuilder(dataset).append(':').append(version);
+        for (Object parameter : parameters) {
+            // Separate with a character that cannot appear in a decoded parameter by accident
+            key.append('\u0000').append(parameter);
+        }
+        key.append('\u0000').append(mediaType.getType()).append('/').append(mediaType.getSubtype());
+        return "W/\"" + dataset + "-" + version + "-"
+                + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 16) + "\"";
+    }
+
+    /**
+     * Check whether the client already has the tagged response
+     * @param ifNoneMatch The If-None-Match request header, may be null
+     * @param tag The tag of the current response, as returned by {@link #of}
+     * @return True if the header lists the tag or is {@code *}
+     */
+    public static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            // Weak comparison, as If-None-Match requires
+            String trimmed = opaqueTag(candidate.trim());
+            if (trimmed.equals("*") || trimmed.equals(opaqueTag(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.iett.tracking.util;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque pagination cursor: the version of the data set the client started paging through
+ * and the key of the last row it received. Encoded as URL-safe Base64 so clients treat it as a token.
+ */
+@Value
+public class PageCursor {
+
+    long version;
+    long lastKey;
+
+    public String encode() {
+        String raw = version + ":" + lastKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decode a cursor previously produced by {@link #encode()}
+     * @param cursor The cursor string
+     * @return The cursor
+     * @throws IllegalArgumentException If the string is not a valid cursor
+     */
+    public static PageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new PageCursor(Long.parseLong(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.iett.tracking.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes sure at most one run of a task is in flight at any time.
+ * Callers either skip when a run is already in progress or wait for it to finish,
+ * but never start a second, overlapping run.
+ */
+public class SingleFlight {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Run the task unless another thread is already running it
+     * @param task The task to run
+     * @return True if the task was run by this call, false if it was skipped
+     */
+    public boolean runIfIdle(Runnable task) {
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            task.run();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run the task, or wait for the in-flight run to finish instead of starting another one
+     * @param task The task to run
+     */
+    public void runOrJoin(Runnable task) {
+        if (runIfIdle(task)) {
+            return;
+        }
+        lock.lock();
+        lock.unlock();
+    }
+
+    public boolean isRunning() {
+        return lock.isLocked();
+    }
+}
@@ -0,0 +1,164 @@
+package com.iett.tracking.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Decodes IETT "_json" SOAP responses straight from the HTTP response stream.
+ * The envelope is walked with StAX and the text of the {@code ...Result} element is fed
+ * into a Jackson streaming parser, so records are handed out one by one without ever
+ * holding the whole payload in memory as a String or a JSON tree.
+ */
+@Component
+@Slf4j
+public class SoapEnvelopeDecoder {
+
+    private final ObjectMapper objectMapper;
+    private final XMLInputFactory xmlInputFactory;
+
+    public SoapEnvelopeDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    }
+
+    /**
+     * Decode the first JSON array inside the given result element, one record at a time
+     * @param body The SOAP response body
+     * @param resultElement Local name of the element holding the JSON payload, e.g. "GetGaraj_jsonResult"
+     * @param type The record type
+     * @param consumer Receives each decoded record
+     * @return The number of records decoded
+     * @param <T> The record type
+     * @throws IOException If the envelope or the JSON payload cannot be read
+     */
+    public <T> int decode(InputStream body, String resultElement, Class<T> type, Consumer<T> consumer) throws IOException {
+        XMLStreamReader xml = null;
+        try {
+            xml = xmlInputFactory.createXMLStreamReader(body);
+            if (!seekElement(xml, resultElement)) {
+                throw new IOException("SOAP response has no " + resultElement + " element");
+            }
+
+            try (JsonParser parser = objectMapper.getFactory().createParser(new ElementTextReader(xml))) {
+                if (!seekArray(parser)) {
+                    log.error("No array found in {}", resultElement);
+                    return 0;
+                }
+
+                int count = 0;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    consumer.accept(objectMapper.readValue(parser, type));
+                    count++;
+                }
+                return count;
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed SOAP response: " + e.getMessage(), e);
+        } finally {
+            closeQuietly(xml);
+        }
+    }
+
+    private boolean seekElement(XMLStreamReader xml, String localName) throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamConstants.START_ELEMENT && localName.equals(xml.getLocalName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advance to the first array in document order, which is the same array
+     * a depth-first search of the JSON tree would find first
+     */
+    private boolean seekArray(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.START_ARRAY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void closeQuietly(XMLStreamReader xml) {
+        if (xml == null) {
+            return;
+        }
+        try {
+            xml.close();
+        } catch (XMLStreamException e) {
+            log.debug("Error closing XML reader: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Exposes the character content of the current element as a {@link Reader},
+     * copying text chunks straight out of the StAX buffer until the element ends.
+     */
+    private static final class ElementTextReader extends Reader {
+
+        private final XMLStreamReader xml;
+        private boolean inText;
+        private int textOffset;
+        private boolean finished;
+
+        private ElementTextReader(XMLStreamReader xml) {
+            this.xml = xml;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            try {
+                while (!finished) {
+                    if (inText && textOffset < xml.getTextLength()) {
+                        int copied = xml.getTextCharacters(textOffset, buffer, offset, length);
+                        textOffset += copied;
+                        return copied;
+                    }
+                    inText = false;
+
+                    switch (xml.next()) {
+                        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                            inText = true;
+                            textOffset = 0;
+                        }
+                        case XMLStreamConstants.END_ELEMENT, XMLStreamConstants.END_DOCUMENT -> finished = true;
+                        case XMLStreamConstants.START_ELEMENT ->
+                                throw new IOException("Unexpected element <" + xml.getLocalName() + "> inside SOAP result");
+                        default -> {
+                            // Comments and processing instructions carry no payload
+                        }
+                    }
+                }
+                return -1;
+            } catch (XMLStreamException e) {
+                throw new IOException("Malformed SOAP response: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+        }
+    }
+}
@@ -5,9 +5,11 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Collections;
@@ -21,9 +23,28 @@ public class SoapUtils {
     
     private static final Pattern POINT_PATTERN = Pattern.compile("POINT\\s*\\(\\s*([\\d.-]+)\\s+([\\d.-]+)\\s*\\)");
     private final ObjectMapper objectMapper;
+    private final ZoneId timeZone;
     
-    public SoapUtils(ObjectMapper objectMapper) {
+    public SoapUtils(ObjectMapper objectMapper, @Value("${iett.soap.time-zone}") ZoneId timeZone) {
         this.objectMapper = objectMapper;
+        this.timeZone = timeZone;
+    }
+    
+    /**
+     * Get the zone the IETT services write their local times in
+     * @return The zone of the parsed times
+     */
+    public ZoneId getTimeZone() {
+        return timeZone;
+    }
+    
+    /**
+     * Get the current time in the zone of the IETT services, so it can be compared with parsed times
+     * whatever zone the JVM runs in
+     * @return The current local time in {@link #getTimeZone()}
+     */
+    public LocalDateTime now() {
+        return LocalDateTime.now(timeZone);
     }
     
     /**
@@ -60,7 +81,7 @@ public class SoapUtils {
      * @param node The JSON node to search
      * @return The first array node found, or null if none
      */
-    private JsonNode findArrayNode(JsonNode node) {
+    JsonNode findArrayNode(JsonNode node) {
         if (node.isArray()) {
             return node;
         }
@@ -99,11 +120,21 @@ public class SoapUtils {
     /**
      * Parse a time string to a LocalDateTime
      * @param timeString The time string
-     * @return A LocalDateTime object
+     * @return A LocalDateTime object, or the current time if the string is missing or cannot be parsed
      */
     public LocalDateTime parseTimeStringToDateTime(String timeString) {
+        LocalDateTime time = parseTimeOrNull(timeString);
+        return time != null ? time : now();
+    }
+    
+    /**
+     * Parse a time string to a LocalDateTime
+     * @param timeString The time string
+     * @return A LocalDateTime object, or null if the string is missing or cannot be parsed
+     */
+    public LocalDateTime parseTimeOrNull(String timeString) {
         if (timeString == null || timeString.trim().isEmpty()) {
-            return LocalDateTime.now();
+            return null;
         }
         
         try {
@@ -111,7 +142,7 @@ public class SoapUtils {
             return LocalDateTime.parse(timeString, formatter);
         } catch (DateTimeParseException e) {
             log.warn("Could not parse time string: {}", timeString);
-            return LocalDateTime.now();
+            return null;
         }
     }
     
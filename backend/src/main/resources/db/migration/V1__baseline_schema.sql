@@ -0,0 +1,38 @@
+-- Schema as previously generated by Hibernate (ddl-auto=update).
+-- Existing databases are baselined at this version and skip it.
+
+CREATE TABLE IF NOT EXISTS garages (
+    id BIGSERIAL PRIMARY KEY,
+    garage_name VARCHAR(255) NOT NULL,
+    garage_code VARCHAR(255) NOT NULL,
+    coordinate TEXT,
+    last_updated TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS buses (
+    id INTEGER PRIMARY KEY,
+    door_no VARCHAR(255),
+    door_number VARCHAR(255),
+    operator VARCHAR(255),
+    garage VARCHAR(255),
+    garage_code VARCHAR(255),
+    latitude DOUBLE PRECISION,
+    longitude DOUBLE PRECISION,
+    coordinate VARCHAR(255),
+    speed DOUBLE PRECISION,
+    license_plate VARCHAR(255),
+    time TIMESTAMP(6),
+    record_time TIMESTAMP(6),
+    last_updated TIMESTAMP(6),
+    nearest_garage_code VARCHAR(255),
+    nearest_garage_name VARCHAR(255),
+    distance_to_nearest_garage DOUBLE PRECISION
+);
+
+CREATE TABLE IF NOT EXISTS data_retrieval_log (
+    id BIGSERIAL PRIMARY KEY,
+    data_type VARCHAR(255) NOT NULL CHECK (data_type IN ('GARAGE', 'BUS')),
+    retrieval_time TIMESTAMP(6) NOT NULL,
+    success BOOLEAN NOT NULL,
+    error_message TEXT
+);
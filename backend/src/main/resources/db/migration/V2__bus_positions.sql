@@ -0,0 +1,16 @@
+-- Position history, range-partitioned by day on record_time.
+-- Daily partitions are created and dropped at runtime by BusPositionHistoryService.
+
+CREATE TABLE IF NOT EXISTS bus_positions (
+    bus_id INTEGER NOT NULL,
+    door_number VARCHAR(255),
+    record_time TIMESTAMP(6) NOT NULL,
+    latitude DOUBLE PRECISION NOT NULL,
+    longitude DOUBLE PRECISION NOT NULL,
+    speed DOUBLE PRECISION,
+    PRIMARY KEY (bus_id, record_time)
+) PARTITION BY RANGE (record_time);
+
+CREATE INDEX IF NOT EXISTS idx_bus_positions_door_time ON bus_positions (door_number, record_time);
+
+CREATE TABLE IF NOT EXISTS bus_positions_default PARTITION OF bus_positions DEFAULT;
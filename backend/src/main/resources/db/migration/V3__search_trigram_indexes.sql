@@ -0,0 +1,12 @@
+-- Trigram indexes for the LOWER(column) LIKE '%term%' predicates of the search queries,
+-- so substring search no longer scans the whole table.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_garages_name_trgm ON garages USING gin (lower(garage_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_garages_code_trgm ON garages USING gin (lower(garage_code) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_buses_operator_trgm ON buses USING gin (lower(operator) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_buses_garage_code_trgm ON buses USING gin (lower(garage_code) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_buses_door_number_trgm ON buses USING gin (lower(door_number) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_buses_license_plate_trgm ON buses USING gin (lower(license_plate) gin_trgm_ops);
@@ -0,0 +1,47 @@
+-- Operators, garage codes and nearest-garage names repeat across every bus row.
+-- They move to a shared lookup table and buses keep integer keys into it.
+
+CREATE TABLE IF NOT EXISTS bus_labels (
+    id SERIAL PRIMARY KEY,
+    value VARCHAR(255) NOT NULL UNIQUE
+);
+
+INSERT INTO bus_labels (value)
+SELECT DISTINCT value FROM (
+    SELECT operator AS value FROM buses
+    UNION SELECT garage FROM buses
+    UNION SELECT garage_code FROM buses
+    UNION SELECT nearest_garage_code FROM buses
+    UNION SELECT nearest_garage_name FROM buses
+) labels
+WHERE value IS NOT NULL
+ON CONFLICT (value) DO NOTHING;
+
+ALTER TABLE buses
+    ADD COLUMN operator_id INTEGER REFERENCES bus_labels (id),
+    ADD COLUMN garage_id INTEGER REFERENCES bus_labels (id),
+    ADD COLUMN garage_code_id INTEGER REFERENCES bus_labels (id),
+    ADD COLUMN nearest_garage_code_id INTEGER REFERENCES bus_labels (id),
+    ADD COLUMN nearest_garage_name_id INTEGER REFERENCES bus_labels (id);
+
+UPDATE buses b SET
+    operator_id = (SELECT l.id FROM bus_labels l WHERE l.value = b.operator),
+    garage_id = (SELECT l.id FROM bus_labels l WHERE l.value = b.garage),
+    garage_code_id = (SELECT l.id FROM bus_labels l WHERE l.value = b.garage_code),
+    nearest_garage_code_id = (SELECT l.id FROM bus_labels l WHERE l.value = b.nearest_garage_code),
+    nearest_garage_name_id = (SELECT l.id FROM bus_labels l WHERE l.value = b.nearest_garage_name);
+
+DROP INDEX IF EXISTS idx_buses_operator_trgm;
+DROP INDEX IF EXISTS idx_buses_garage_code_trgm;
+
+ALTER TABLE buses
+    DROP COLUMN operator,
+    DROP COLUMN garage,
+    DROP COLUMN garage_code,
+    DROP COLUMN nearest_garage_code,
+    DROP COLUMN nearest_garage_name;
+
+-- Substring search matches the few labels first and then the buses by key
+CREATE INDEX IF NOT EXISTS idx_bus_labels_value_trgm ON bus_labels USING gin (lower(value) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_buses_operator_id ON buses (operator_id);
+CREATE INDEX IF NOT EXISTS idx_buses_garage_code_id ON buses (garage_code_id);
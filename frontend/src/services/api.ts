@@ -1,5 +1,5 @@
 import axios from 'axios';
-import { Bus, Garage, SearchResponse } from '../types';
+import { Bus, CursorPage, FleetChanges, Garage, SearchResponse } from '../types';
 
 // Create axios instance with base URL
 const apiClient = axios.create({
@@ -21,6 +21,19 @@ export const fetchGarages = async (page = 0, size = 20): Promise<Garage[]> => {
   }
 };
 
+// Pass the previous page's nextCursor to continue; a 410 response means paging has to restart
+export const fetchGaragesByCursor = async (cursor?: string, size = 100): Promise<CursorPage<Garage>> => {
+  try {
+    const params = new URLSearchParams({ size: String(size) });
+    if (cursor) params.set('cursor', cursor);
+    const response = await apiClient.get<CursorPage<Garage>>(`/garages/cursor?${params}`);
+    return response.data;
+  } catch (error) {
+    console.error('Error fetching garages:', error);
+    throw error;
+  }
+};
+
 export const searchGarages = async (term: string, page = 0, size = 20): Promise<SearchResponse<Garage>> => {
   try {
     const response = await apiClient.get<SearchResponse<Garage>>(
@@ -54,6 +67,19 @@ export const fetchBuses = async (page = 0, size = 20): Promise<Bus[]> => {
   }
 };
 
+// Pass the previous page's nextCursor to continue; a 410 response means paging has to restart
+export const fetchBusesByCursor = async (cursor?: string, size = 100): Promise<CursorPage<Bus>> => {
+  try {
+    const params = new URLSearchParams({ size: String(size) });
+    if (cursor) params.set('cursor', cursor);
+    const response = await apiClient.get<CursorPage<Bus>>(`/buses/cursor?${params}`);
+    return response.data;
+  } catch (error) {
+    console.error('Error fetching buses:', error);
+    throw error;
+  }
+};
+
 export const searchBuses = async (term: string, page = 0, size = 20): Promise<SearchResponse<Bus>> => {
   try {
     const response = await apiClient.get<SearchResponse<Bus>>(
@@ -74,4 +100,31 @@ export const refreshBuses = async (): Promise<Bus[]> => {
     console.error('Error refreshing buses:', error);
     throw error;
   }
-}; 
\ No newline at end of file
+};
+
+export interface FleetStreamFilter {
+  garage?: string;
+  // minLon,minLat,maxLon,maxLat
+  bbox?: [number, number, number, number];
+}
+
+// Live fleet updates; the first event has full=true, later ones only carry changes.
+// EventSource reconnects on its own, and a reconnect starts again with a full event.
+export const subscribeToFleet = (
+  onChanges: (changes: FleetChanges) => void,
+  filter: FleetStreamFilter = {}
+): (() => void) => {
+  const params = new URLSearchParams();
+  if (filter.garage) params.set('garage', filter.garage);
+  if (filter.bbox) params.set('bbox', filter.bbox.join(','));
+  const query = params.toString();
+
+  const source = new EventSource(`/api/buses/stream${query ? `?${query}` : ''}`);
+  source.addEventListener('fleet', (event) => {
+    onChanges(JSON.parse((event as MessageEvent).data) as FleetChanges);
+  });
+  source.onerror = (error) => {
+    console.error('Fleet stream error:', error);
+  };
+  return () => source.close();
+};
@@ -6,6 +6,7 @@ export interface Garage {
 }
 
 export interface Bus {
+  id?: number;
   doorNo: string;
   operator: string;
   garage: string;
@@ -13,12 +14,30 @@ export interface Bus {
   longitude: number;
   speed: number;
   licensePlate: string;
-  time: Array<number>;
+  time?: Array<number>;
+  lastUpdated?: Array<number>;
   nearestGarageCode?: string;
   nearestGarageName?: string;
   distanceToNearestGarage?: number;
 }
 
+export interface FleetChanges {
+  fromVersion: number;
+  version: number;
+  full: boolean;
+  added: Bus[];
+  moved: Bus[];
+  removed: number[];
+}
+
+export interface CursorPage<T> {
+  results: T[];
+  count: number;
+  version: number;
+  nextCursor: string | null;
+  hasMore: boolean;
+}
+
 export interface SearchResponse<T> {
   results: T[];
   count: number;